@@ -0,0 +1,137 @@
+package io.github.themoddinginquisition.theinquisitor.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sun.net.httpserver.Headers;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.RoutingKeys;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.WebhookHttpHandler;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.event.PushEvent;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.event.WebhookEventType;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.handler.WebhookEventHandler;
+import io.github.themoddinginquisition.theinquisitor.util.io.BodyBuffer;
+import io.github.themoddinginquisition.theinquisitor.util.io.MacInputStream;
+import org.kohsuke.github.GitHub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the stages of the webhook ingestion path: reading and verifying the body, looking up the event type,
+ * extracting the routing keys, binding the payload, and the whole {@link WebhookHttpHandler#handle(com.sun.net.httpserver.HttpExchange)} call. <br>
+ * The {@code commits} parameter controls the size of the push payloads, going from a couple of KiB to about a MiB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookIngestionBenchmark {
+    private static final byte[] SECRET = "benchmark-secret".getBytes(StandardCharsets.UTF_8);
+    // Generating GUIDs uses SecureRandom, which isn't part of ingestion, so they are generated up-front
+    private static final int GUID_POOL_SIZE = 1024;
+
+    @Param({"1", "20", "1000"})
+    public int commits;
+
+    private byte[] payload;
+    private String signature;
+    private Mac mac;
+    private ObjectReader reader;
+
+    private WebhookHttpHandler ignoringHandler;
+    private WebhookHttpHandler bindingHandler;
+
+    private String[] guids;
+    private int nextGuid;
+
+    @Setup
+    public void setup() throws Exception {
+        payload = WebhookPayloads.push(commits);
+        mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET, "HmacSHA256"));
+        signature = "sha256=" + MacInputStream.bytesToHex(mac.doFinal(payload));
+        reader = GitHub.getMappingObjectReader().forType(PushEvent.class);
+
+        guids = new String[GUID_POOL_SIZE];
+        for (int i = 0; i < GUID_POOL_SIZE; i++)
+            guids[i] = UUID.randomUUID().toString();
+
+        // No handler is interested in the event, so the payload is never bound
+        ignoringHandler = new WebhookHttpHandler(SECRET)
+                .addHandler(WebhookEventType.PUSH, new NoopHandler(false));
+        bindingHandler = new WebhookHttpHandler(SECRET)
+                .addHandler(WebhookEventType.PUSH, new NoopHandler(true));
+    }
+
+    @Benchmark
+    public byte[] verifySignature() throws IOException, CloneNotSupportedException {
+        final var mac = (Mac) this.mac.clone();
+        try (final var body = BodyBuffer.acquire();
+             final var is = new MacInputStream(mac, new ByteArrayInputStream(payload))) {
+            body.readFrom(is, WebhookHttpHandler.MAX_PAYLOAD_SIZE);
+        }
+        return mac.doFinal();
+    }
+
+    @Benchmark
+    public WebhookEventType<?> lookupEventType() {
+        return WebhookEventType.getEventType("push");
+    }
+
+    @Benchmark
+    public RoutingKeys parseRoutingKeys() throws IOException {
+        return RoutingKeys.parse(payload, 0, payload.length);
+    }
+
+    @Benchmark
+    public PushEvent deserializePushEvent() throws IOException {
+        return reader.readValue(payload);
+    }
+
+    @Benchmark
+    public int handleIgnored() throws IOException {
+        return handle(ignoringHandler);
+    }
+
+    @Benchmark
+    public int handleBound() throws IOException {
+        return handle(bindingHandler);
+    }
+
+    private int handle(WebhookHttpHandler handler) throws IOException {
+        final var headers = new Headers();
+        headers.add(WebhookHttpHandler.GITHUB_EVENT_HEADER, "push");
+        headers.add(WebhookHttpHandler.GITHUB_DELIVERY_GUID_HEADER, guids[nextGuid++ & (GUID_POOL_SIZE - 1)]);
+        headers.add(WebhookHttpHandler.GITHUB_SIGNATURE_HEADER, signature);
+        final var exchange = new BenchmarkExchange(headers, payload);
+        handler.handle(exchange);
+        return exchange.getResponseCode();
+    }
+
+    private record NoopHandler(boolean accepts) implements WebhookEventHandler<PushEvent> {
+        @Override
+        public boolean accepts(RoutingKeys keys) {
+            return accepts;
+        }
+
+        @Override
+        public void handleEvent(UUID deliveryID, Context context, PushEvent event) {
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.themoddinginquisition.theinquisitor.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates synthetic webhook payloads, shaped like the ones GitHub sends.
+ */
+final class WebhookPayloads {
+    private WebhookPayloads() {
+    }
+
+    /**
+     * Creates a push event payload.
+     *
+     * @param commits the amount of commits in the push, which mostly determines the size of the payload
+     * @return the payload
+     */
+    static byte[] push(int commits) {
+        final var payload = new JsonObject();
+        payload.addProperty("ref", "refs/heads/feature/benchmark");
+        payload.addProperty("before", sha(0));
+        payload.addProperty("after", sha(commits));
+        payload.addProperty("created", false);
+        payload.addProperty("deleted", false);
+        payload.addProperty("forced", false);
+        payload.addProperty("compare", "https://github.com/TheModdingInquisition/Benchmark/compare/" + sha(0) + "..." + sha(commits));
+        payload.add("repository", repository());
+        payload.add("pusher", user("pusher"));
+        payload.add("sender", user("sender"));
+
+        final var array = new JsonArray();
+        for (int i = 1; i <= commits; i++)
+            array.add(commit(i));
+        payload.add("commits", array);
+        payload.add("head_commit", commits == 0 ? null : commit(commits));
+        return payload.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static JsonObject commit(int index) {
+        final var commit = new JsonObject();
+        commit.addProperty("id", sha(index));
+        commit.addProperty("tree_id", sha(index + 1_000_000));
+        commit.addProperty("distinct", true);
+        commit.addProperty("message", "Commit number " + index + "\n\n" + "Some longer description of the change. ".repeat(5));
+        commit.addProperty("timestamp", "2022-05-01T12:00:00Z");
+        commit.addProperty("url", "https://github.com/TheModdingInquisition/Benchmark/commit/" + sha(index));
+        final var author = new JsonObject();
+        author.addProperty("name", "Benchmark Author");
+        author.addProperty("email", "author@example.com");
+        author.addProperty("username", "author");
+        commit.add("author", author);
+        commit.add("committer", author);
+        final var modified = new JsonArray();
+        for (int i = 0; i < 5; i++)
+            modified.add("src/main/java/com/example/File" + index + "_" + i + ".java");
+        commit.add("added", new JsonArray());
+        commit.add("removed", new JsonArray());
+        commit.add("modified", modified);
+        return commit;
+    }
+
+    private static JsonObject repository() {
+        final var repository = new JsonObject();
+        repository.addProperty("id", 123456789);
+        repository.addProperty("node_id", "R_kgDOBenchmark");
+        repository.addProperty("name", "Benchmark");
+        repository.addProperty("full_name", "TheModdingInquisition/Benchmark");
+        repository.addProperty("private", false);
+        repository.addProperty("html_url", "https://github.com/TheModdingInquisition/Benchmark");
+        repository.addProperty("url", "https://api.github.com/repos/TheModdingInquisition/Benchmark");
+        repository.addProperty("default_branch", "main");
+        repository.add("owner", user("TheModdingInquisition"));
+        return repository;
+    }
+
+    private static JsonObject user(String login) {
+        final var user = new JsonObject();
+        user.addProperty("login", login);
+        user.addProperty("id", login.hashCode() & Integer.MAX_VALUE);
+        user.addProperty("type", "User");
+        user.addProperty("url", "https://api.github.com/users/" + login);
+        user.addProperty("html_url", "https://github.com/" + login);
+        return user;
+    }
+
+    private static String sha(int index) {
+        return "%040x".formatted(index);
+    }
+}
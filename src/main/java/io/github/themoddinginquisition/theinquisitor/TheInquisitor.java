@@ -13,35 +13,45 @@ import io.github.themoddinginquisition.theinquisitor.commands.ForkCommand;
 import io.github.themoddinginquisition.theinquisitor.commands.LinkGitHubCommand;
 import io.github.themoddinginquisition.theinquisitor.commands.pr.ManagedPRs;
 import io.github.themoddinginquisition.theinquisitor.commands.pr.PRCommand;
+import io.github.themoddinginquisition.theinquisitor.db.Database;
+import io.github.themoddinginquisition.theinquisitor.db.V5__content_hashes;
+import io.github.themoddinginquisition.theinquisitor.db.V8__gcm_oauth_tokens;
+import io.github.themoddinginquisition.theinquisitor.github.GitHubClients;
 import io.github.themoddinginquisition.theinquisitor.github.GitHubUserCache;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.DeliveryDeduplicator;
 import io.github.themoddinginquisition.theinquisitor.github.webhook.WebhookHttpHandler;
 import io.github.themoddinginquisition.theinquisitor.github.webhook.event.WebhookEventType;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.handler.IssueCommentHandler;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.handler.LabelHandler;
 import io.github.themoddinginquisition.theinquisitor.github.webhook.handler.PingHandler;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.handler.PullRequestHandler;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.handler.PullRequestReviewHandler;
 import io.github.themoddinginquisition.theinquisitor.github.webhook.handler.PushHandler;
 import io.github.themoddinginquisition.theinquisitor.util.Config;
 import io.github.themoddinginquisition.theinquisitor.util.Constants;
 import io.github.themoddinginquisition.theinquisitor.util.DeferredComponentListenerRegistry;
 import io.github.themoddinginquisition.theinquisitor.util.DotenvLoader;
+import io.github.themoddinginquisition.theinquisitor.util.PhaseTimer;
+import io.github.themoddinginquisition.theinquisitor.util.ThreadPools;
+import io.github.themoddinginquisition.theinquisitor.util.TokenEncryptor;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.utils.AllowedMentions;
 import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import org.flywaydb.core.Flyway;
-import org.jasypt.util.text.AES256TextEncryptor;
 import org.jdbi.v3.core.Jdbi;
-import org.jdbi.v3.sqlobject.SqlObjectPlugin;
 import org.kohsuke.github.GitHub;
-import org.kohsuke.github.GitHubBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.sqlite.SQLiteDataSource;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
@@ -69,17 +79,21 @@ public class TheInquisitor {
     private final Path rootPath;
     private final Dotenv dotenv;
     private final JDA jda;
+    private final Database database;
     private final Jdbi jdbi;
+    private final GitHubClients gitHubClients;
     private final GitHub github;
-    private final AES256TextEncryptor encryptor;
+    private final TokenEncryptor encryptor;
     private Config config;
     private final GitHubUserCache gitHubUserCache;
     private final ComponentManager componentManager;
     private final ManagedPRs managedPRs;
     private final CurseForgeAPI curseForgeAPI;
+    private final Executor commandExecutor;
 
     private TheInquisitor(Path rootPath) throws Exception {
         this.rootPath = rootPath;
+        final var startup = new PhaseTimer("Startup");
 
         this.dotenv = DotenvLoader.builder()
                 .whenCreated(writer -> writer
@@ -116,12 +130,13 @@ public class TheInquisitor {
             LOGGER.info("Reloaded config file {}", cfgPath);
         });
 
-        this.encryptor = new AES256TextEncryptor();
-        encryptor.setPassword(dotenv.get("encryption_password"));
+        this.encryptor = new TokenEncryptor(dotenv.get("encryption_password"));
 
-        this.github = new GitHubBuilder()
-                .withOAuthToken(dotenv.get("github_token"))
-                .build();
+        this.gitHubClients = new GitHubClients();
+        // The cache size is configured in MiB, and a size of 0 disables the cache
+        final var cacheDirectory = config.gitHubCacheSize > 0 && config.gitHubCacheDirectory != null ? Path.of(config.gitHubCacheDirectory) : null;
+        this.github = gitHubClients.forBot(dotenv.get("github_token"), cacheDirectory, config.gitHubCacheSize * 1024 * 1024);
+        startup.phase("configuration");
 
         // Setup database
         {
@@ -133,20 +148,19 @@ public class TheInquisitor {
                     throw new RuntimeException("Exception creating database!", e);
                 }
             }
-            final var url = "jdbc:sqlite:" + dbPath;
-            SQLiteDataSource dataSource = new SQLiteDataSource();
-            dataSource.setUrl(url);
-            dataSource.setDatabaseName("TheInquisitor");
+            database = new Database(dbPath, config.databaseReaders, () -> getConfig().slowQueryThreshold);
+            Runtime.getRuntime().addShutdownHook(new Thread(database::close, "DatabaseShutdownHook"));
 
             final var flyway = Flyway.configure()
-                    .dataSource(dataSource)
+                    .dataSource(database.getDataSource())
                     .locations("classpath:db")
+                    .javaMigrations(new V5__content_hashes(), new V8__gcm_oauth_tokens(encryptor))
                     .load();
             flyway.migrate();
 
-            jdbi = Jdbi.create(dataSource)
-                    .installPlugin(new SqlObjectPlugin());
+            jdbi = database.jdbi();
         }
+        startup.phase("database migration");
 
         // Components
         {
@@ -154,7 +168,16 @@ public class TheInquisitor {
             this.componentManager = LISTENER_REGISTRY.createManager(storage);
         }
 
-        managedPRs = new ManagedPRs(github, jdbi, this::getJDA, config.channel);
+        if (config.virtualThreads) {
+            LOGGER.info(ThreadPools.supportsVirtualThreads() ? "Using virtual threads for blocking work"
+                    : "Virtual threads are not supported by this runtime; using elastic thread pools for blocking work instead");
+        }
+
+        // Commands run on the event pool by default
+        this.commandExecutor = config.virtualThreads ? ThreadPools.blocking("CommandExecutor") : Runnable::run;
+
+        managedPRs = new ManagedPRs(github, database, this::getJDA, this::getConfig, config.virtualThreads ? ThreadPools.blocking("PRChecker") : Executors.newCachedThreadPool(ThreadPools.daemon("PRChecker")));
+        startup.phase("loading " + managedPRs.size() + " managed PRs");
 
         final var clientBuilder = new CommandClientBuilder()
                 .setOwnerId(0L)
@@ -169,7 +192,7 @@ public class TheInquisitor {
                 .addEventListeners(
                         clientBuilder.build(), componentManager, new DismissListener()
                 )
-                .setEventPool(Executors.newFixedThreadPool(2, r -> {
+                .setEventPool(config.virtualThreads ? ThreadPools.blocking("Event Pool") : Executors.newFixedThreadPool(2, r -> {
                     final var thread = new Thread(r, "Event Pool");
                     thread.setDaemon(true);
                     return thread;
@@ -187,10 +210,11 @@ public class TheInquisitor {
                         }))))
                 .build()
                 .awaitReady();
+        startup.phase("connecting to Discord");
 
         AllowedMentions.setDefaultMentionRepliedUser(false);
 
-        this.gitHubUserCache = new GitHubUserCache(github, jdbi, this::getConfig);
+        this.gitHubUserCache = new GitHubUserCache(github, gitHubClients, jdbi, this::getConfig);
 
         Runtime.getRuntime().addShutdownHook(new Thread(jda::shutdownNow, "ShutdownHook"));
 
@@ -208,6 +232,11 @@ public class TheInquisitor {
             }
         }, 1,config.updateCheckInterval, TimeUnit.MINUTES);
         pool.scheduleAtFixedRate(() -> componentManager.removeComponentsOlderThan(30, ChronoUnit.MINUTES), 1, 30, TimeUnit.MINUTES);
+        pool.scheduleAtFixedRate(() -> {
+            final var metrics = gitHubClients.getBotCacheMetrics();
+            LOGGER.debug("GitHub response cache: {} hits, {} conditional hits (304 Not Modified), {} misses",
+                    metrics.getHits(), metrics.getConditionalHits(), metrics.getMisses());
+        }, 30, 30, TimeUnit.MINUTES);
 
         this.curseForgeAPI = CurseForgeAPI.builder()
                 .apiKey(dotenv.get("cfapi_key"))
@@ -216,23 +245,46 @@ public class TheInquisitor {
         {
             // Setup the endpoint
             final var server = HttpServer.create(new InetSocketAddress(config.webhookPort), 0);
-            server.setExecutor(Executors.newSingleThreadExecutor(r -> new Thread(r, "WebhookEndpoint")));
+            server.setExecutor(config.virtualThreads ? ThreadPools.blocking("WebhookEndpoint") : Executors.newSingleThreadExecutor(r -> new Thread(r, "WebhookEndpoint")));
 
             final var webhookContext = server.createContext("/webhooks");
             final var webhookHandler = new WebhookHttpHandler()
                     .addHandler(WebhookEventType.PING, new PingHandler())
-                    .addHandler(WebhookEventType.PUSH, new PushHandler());
+                    .addHandler(WebhookEventType.PUSH, new PushHandler(managedPRs))
+                    .addHandler(WebhookEventType.PULL_REQUEST, new PullRequestHandler(managedPRs))
+                    .addHandler(WebhookEventType.PULL_REQUEST_REVIEW, new PullRequestReviewHandler(managedPRs))
+                    .addHandler(WebhookEventType.ISSUE_COMMENT, new IssueCommentHandler(managedPRs))
+                    .addHandler(WebhookEventType.LABEL, new LabelHandler(managedPRs));
             webhookHandler.bind(webhookContext);
 
+            final var deduplicator = new DeliveryDeduplicator(Duration.ofHours(config.webhookDeduplicationHours), 10_000,
+                    config.persistWebhookDeliveries ? jdbi : null);
+            webhookHandler.deduplicate(deduplicator);
+            pool.scheduleAtFixedRate(deduplicator::cleanUp, 1, 1, TimeUnit.HOURS);
+            if (config.webhookAsync) {
+                webhookHandler.async(config.webhookWorkers, config.webhookQueueCapacity, config.webhookBackpressure, r -> {
+                    final var thread = new Thread(r, "WebhookWorker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                pool.scheduleAtFixedRate(() -> LOGGER.debug("Webhook queue metrics: {}", webhookHandler.getQueueMetrics()), 10, 10, TimeUnit.MINUTES);
+            }
+
             server.start();
         }
+        startup.phase("starting the webhook endpoint");
+        startup.done();
+
+        // Commands and webhooks are served already, so anything that needs GitHub can happen in the background
+        final var branchResolution = new PhaseTimer("Background startup");
+        managedPRs.resolveMissingBranches().whenComplete(($, e) -> branchResolution.phase("resolving PR head branches"));
     }
 
     public JDA getJDA() {
         return jda;
     }
 
-    public AES256TextEncryptor getEncryptor() {
+    public TokenEncryptor getEncryptor() {
         return encryptor;
     }
 
@@ -248,10 +300,18 @@ public class TheInquisitor {
         return this.gitHubUserCache;
     }
 
+    public GitHubClients getGitHubClients() {
+        return gitHubClients;
+    }
+
     public Jdbi jdbi() {
         return jdbi;
     }
 
+    public Database getDatabase() {
+        return database;
+    }
+
     public GitHub getGithub() {
         return github;
     }
@@ -267,4 +327,8 @@ public class TheInquisitor {
     public CurseForgeAPI getCurseForgeAPI() {
         return curseForgeAPI;
     }
+
+    public Executor getCommandExecutor() {
+        return commandExecutor;
+    }
 }
@@ -20,6 +20,11 @@ public abstract class BaseSlashCommand extends SlashCommand {
 
     @Override
     protected final void execute(SlashCommandEvent event) {
+        // Commands usually block on GitHub requests, so run them on the command executor instead of the event pool
+        TheInquisitor.getInstance().getCommandExecutor().execute(() -> executeCommand(event));
+    }
+
+    private void executeCommand(SlashCommandEvent event) {
         try {
             if (janitorOnly && !isJanitor(event))
                 return;
@@ -17,7 +17,6 @@ import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
 import net.dv8tion.jda.api.interactions.components.buttons.ButtonStyle;
 import net.dv8tion.jda.api.utils.TimeFormat;
-import org.kohsuke.github.GitHubBuilder;
 
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -119,15 +118,14 @@ public class LinkGitHubCommand extends BaseSlashCommand {
             }
 
             final var token = res.get("access_token").getAsString();
-            final var gh = new GitHubBuilder()
-                    .withJwtToken(token)
-                    .build();
+            final var gh = TheInquisitor.getInstance().getGitHubClients().forUser(token);
 
             context.getEvent().deferReply(true)
                     .setContent("Successfully authenticated as `" + gh.getMyself().getName() + "`")
                     .queue();
 
             TheInquisitor.getInstance().jdbi().useExtension(GithubOauthDAO.class, dao -> dao.insertEncrypted(ownerId, token));
+            TheInquisitor.getInstance().getGitHubUserCache().invalidate(ownerId);
         } catch (Exception e) {
             context.getEvent().deferReply(true).setContent("There was an error handling that interaction: " + e).queue();
             TheInquisitor.LOGGER.error("Exception trying to verify user authentication: ", e);
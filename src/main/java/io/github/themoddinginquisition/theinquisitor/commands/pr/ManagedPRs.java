@@ -1,16 +1,26 @@
 package io.github.themoddinginquisition.theinquisitor.commands.pr;
 
-import com.google.common.collect.Iterables;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.matyrobbrt.jdahelper.components.Component;
 import com.matyrobbrt.jdahelper.components.ComponentListener;
 import com.matyrobbrt.jdahelper.components.context.ButtonInteractionContext;
 import com.matyrobbrt.jdahelper.components.context.ModalInteractionContext;
 import io.github.themoddinginquisition.theinquisitor.TheInquisitor;
+import io.github.themoddinginquisition.theinquisitor.db.Database;
+import io.github.themoddinginquisition.theinquisitor.db.PRBranchesDAO;
 import io.github.themoddinginquisition.theinquisitor.db.PullRequestsDAO;
+import io.github.themoddinginquisition.theinquisitor.github.LabelCatalog;
+import io.github.themoddinginquisition.theinquisitor.github.PullRequestPoller;
+import io.github.themoddinginquisition.theinquisitor.github.RateLimitAwareLimiter;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.event.WebhookEventType;
+import io.github.themoddinginquisition.theinquisitor.util.Config;
 import io.github.themoddinginquisition.theinquisitor.util.ThrowingRunnable;
 import io.github.themoddinginquisition.theinquisitor.util.Utils;
-import io.github.themoddinginquisition.theinquisitor.util.wrap.WrappedList;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.MessageBuilder;
@@ -22,30 +32,42 @@ import net.dv8tion.jda.api.interactions.components.buttons.ButtonStyle;
 import net.dv8tion.jda.api.interactions.components.text.TextInput;
 import net.dv8tion.jda.api.interactions.components.text.TextInputStyle;
 import net.dv8tion.jda.api.requests.RestAction;
-import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
 import org.apache.commons.lang3.time.StopWatch;
 import org.jdbi.v3.core.Jdbi;
 import org.jdbi.v3.core.extension.ExtensionCallback;
 import org.jetbrains.annotations.Nullable;
-import org.kohsuke.github.GHCommit;
+import org.kohsuke.github.GHAccessor;
 import org.kohsuke.github.GHIssueComment;
 import org.kohsuke.github.GHLabel;
 import org.kohsuke.github.GHPullRequest;
-import org.kohsuke.github.GHPullRequestCommitDetail;
+import org.kohsuke.github.GHPullRequestReview;
+import org.kohsuke.github.GHPullRequestReviewState;
 import org.kohsuke.github.GHUser;
 import org.kohsuke.github.GitHub;
 
 import java.awt.*;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -54,39 +76,65 @@ import java.util.stream.Stream;
 
 public class ManagedPRs implements ThrowingRunnable {
 
-    public static final Map<String, Long> BRANCH_TO_THREAD = new HashMap<>();
+    private static final int COMMITS_PAGE_SIZE = 100;
+    private static final int MAX_LISTED_COMMITS = 250;
+    private static final int AUTHOR_LOOKUP_CONCURRENCY = 4;
+    private static final long AUTHOR_LOOKUP_TIMEOUT = 10;
+    // The webhooks which report every change polling would find: state, title, description and labels, and comments
+    private static final List<WebhookEventType<?>> POLLING_REPLACEMENTS = List.of(WebhookEventType.PULL_REQUEST, WebhookEventType.ISSUE_COMMENT);
 
     record ManagedPR(String repo, int number, long threadId) {
+        ManagedPR {
+            repo = repo.toLowerCase(Locale.ROOT);
+        }
     }
 
     private final GitHub gitHub;
     private final Supplier<JDA> jda;
     private final Jdbi jdbi;
-    private final long channel;
-    private final List<ManagedPR> prs = new WrappedList<>(Collections.synchronizedList(new ArrayList<>())) {
-        @Override
-        public boolean add(ManagedPR managedPR) {
-            final var res = super.add(managedPR);
-            if (res) {
-                try {
-                    final GHPullRequest pr = gitHub.getRepository(managedPR.repo()).getPullRequest(managedPR.number());
-                    final var ref = pr.getHead().getRef();
-                    final var branch = ref.substring("refs/heads/".length());
-                    BRANCH_TO_THREAD.put((managedPR.repo() + "/" + branch).toLowerCase(Locale.ROOT), managedPR.threadId());
-                } catch (IOException ignored) {}
-            }
-            return res;
-        }
-    };
+    private final Jdbi readJdbi;
+    private final Supplier<Config> config;
+    private final Executor executor;
+    private final PullRequestPoller poller;
+    private final LabelCatalog labels;
+    private final PRBatchFetcher batchFetcher;
+    private final RateLimitAwareLimiter limiter;
+    private final Striped<Lock> checkLocks = Striped.lock(64);
+    // The events each repository recently delivered webhooks for. Repositories delivering all the events which replace polling
+    // only need to be polled during reconciliation
+    private final Cache<WebhookSource, Boolean> webhookSources = Caffeine.newBuilder()
+            .expireAfterWrite(1, TimeUnit.DAYS)
+            .build();
+    // The display names of commit authors, by login
+    private final AsyncCache<String, String> authorNames;
+    // Bounds the author lookups separately from the limiter, as they happen while holding one of its permits
+    private final Semaphore authorLookups = new Semaphore(AUTHOR_LOOKUP_CONCURRENCY);
+    private volatile Instant lastReconciliation = Instant.EPOCH;
+    // The sweep currently running, if any. Changes found during a sweep are written in one batch at its end
+    @Nullable
+    private volatile Sweep sweep;
+    private final Lock writeLock = new ReentrantLock();
+    private final PRRegistry prs = new PRRegistry();
     final ComponentListener components;
 
-    public ManagedPRs(GitHub gitHub, Jdbi jdbi, Supplier<JDA> jda, long channel) {
+    public ManagedPRs(GitHub gitHub, Database database, Supplier<JDA> jda, Supplier<Config> config, Executor executor) {
         this.gitHub = gitHub;
-        this.jdbi = jdbi;
+        this.jdbi = database.jdbi();
+        this.readJdbi = database.readOnly();
         this.jda = jda;
-        this.channel = channel;
-
-        jdbi.useExtension(PullRequestsDAO.class, db -> db.getAll().forEach(data -> prs.add(new ManagedPR(data.repo(), data.number(), data.threadId()))));
+        this.config = config;
+        this.executor = executor;
+        this.poller = new PullRequestPoller(gitHub);
+        this.labels = new LabelCatalog(gitHub);
+        this.batchFetcher = new PRBatchFetcher(gitHub, labels);
+        this.limiter = new RateLimitAwareLimiter(gitHub, () -> config.get().prCheckConcurrency, () -> config.get().rateLimitReserve);
+        this.authorNames = Caffeine.newBuilder()
+                .expireAfterWrite(1, TimeUnit.DAYS)
+                .maximumSize(1000)
+                .executor(executor)
+                .buildAsync();
+
+        load();
         this.components = TheInquisitor.getComponentListener("pr-manager")
                 .onButtonInteraction(this::onButtonInteraction)
                 .onModalInteraction(ctx -> {
@@ -105,31 +153,207 @@ public class ManagedPRs implements ThrowingRunnable {
     public void manage(String repoName, int number, Consumer<ThreadChannel> channelConsumer) throws IOException {
         final var repo = gitHub.getRepository(repoName);
         final var pr = repo.getPullRequest(number);
-        final var channel = jda.get().getTextChannelById(this.channel);
+        final var channelId = config.get().channel;
+        final var channel = jda.get().getTextChannelById(channelId);
         if (channel == null)
-            throw new NullPointerException("Unknown text channel with ID: " + this.channel);
+            throw new NullPointerException("Unknown text channel with ID: " + channelId);
         final var embed = makePREmbed(pr);
 
         channel.sendMessage(embed.build())
                 .flatMap(msg -> msg.createThreadChannel(repo.getName() + " [" + number + "]"))
                 .queue(th -> {
                     th.retrieveParentMessage().flatMap(msg -> th.pinMessageById(msg.getIdLong())).queue();
-                    prs.add(new ManagedPR(repoName, number, th.getIdLong()));
+                    track(new ManagedPR(repoName, number, th.getIdLong()), pr);
                     channelConsumer.accept(th);
-                    jdbi.useExtension(PullRequestsDAO.class, db -> db.update(PullRequestsDAO.PRData.from(pr, th.getIdLong())));
+                    jdbi.useExtension(PullRequestsDAO.class, db -> db.update(PullRequestsDAO.PRData.from(pr, th.getIdLong()), PullRequestsDAO.PRText.from(pr)));
                 });
     }
 
+    /**
+     * Checks a managed PR for updates right away, following a webhook delivery about it. <br>
+     * The payload of the webhook isn't applied directly. Instead, the PR is fetched again through REST and checked
+     * like a polled PR, so that webhook and polling updates go through the same diffing.
+     *
+     * @param repo   the full name of the repository of the PR
+     * @param number the number of the PR
+     * @param event  the type of the webhook event
+     * @return if the PR is managed
+     */
+    public boolean refresh(String repo, int number, WebhookEventType<?> event) {
+        final var managedPR = find(repo, number);
+        if (managedPR == null)
+            return false;
+        recordWebhook(repo, event);
+        executor.execute(() -> {
+            try {
+                limiter.acquire();
+                try {
+                    // The webhook told us something changed, so don't bother with a conditional request
+                    poller.invalidate(repo, number);
+                    checkPR(managedPR, null, false);
+                } finally {
+                    limiter.release();
+                }
+            } catch (Throwable e) {
+                TheInquisitor.LOGGER.error("Exception trying to update PR {}#{} following a webhook: ", repo, number, e);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Sends a review submitted on a managed PR to its thread.
+     *
+     * @param repo     the full name of the repository of the PR
+     * @param pr       the PR
+     * @param review   the submitted review
+     * @param reviewer the user who submitted the review
+     * @return if the PR is managed
+     */
+    public boolean onReviewSubmitted(String repo, GHPullRequest pr, GHPullRequestReview review, GHUser reviewer) {
+        final var managedPR = find(repo, pr.getNumber());
+        if (managedPR == null)
+            return false;
+        recordWebhook(repo, WebhookEventType.PULL_REQUEST_REVIEW);
+        final var thread = jda.get().getThreadChannelById(managedPR.threadId());
+        if (thread == null)
+            return false;
+        thread.sendMessageEmbeds(makeReviewEmbed(pr, review, reviewer)).queue();
+        return true;
+    }
+
+    private void recordWebhook(String repo, WebhookEventType<?> event) {
+        final var source = new WebhookSource(repo, event.getName());
+        if (webhookSources.asMap().putIfAbsent(source, true) == null && !isWebhookDriven(source.repo()))
+            TheInquisitor.LOGGER.info("Repository {} delivers '{}' webhooks, but PRs in it will keep being polled until it also delivers {} webhooks",
+                    repo, event.getName(), POLLING_REPLACEMENTS.stream().map(WebhookEventType::getName).toList());
+    }
+
+    /**
+     * @param repo the lowercase full name of a repository
+     * @return if the repository recently delivered all the webhooks which replace polling its PRs
+     */
+    private boolean isWebhookDriven(String repo) {
+        return POLLING_REPLACEMENTS.stream().allMatch(event -> webhookSources.getIfPresent(new WebhookSource(repo, event.getName())) != null);
+    }
+
+    private record WebhookSource(String repo, String event) {
+        private WebhookSource {
+            repo = repo.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Invalidates the known labels of a repository, following a webhook delivery about a label being modified.
+     *
+     * @param repo the full name of the repository
+     */
+    public void onLabelsChanged(String repo) {
+        labels.invalidate(repo);
+    }
+
+    /**
+     * @param repo   the full name of the repository of the PR
+     * @param number the number of the PR
+     * @return if the PR is managed
+     */
+    public boolean isManaged(String repo, int number) {
+        return find(repo, number) != null;
+    }
+
+    /**
+     * Gets the thread a push to a branch should be sent to.
+     *
+     * @param repo   the full name of the repository of the branch
+     * @param branch the name of the branch
+     * @return the ID of the thread of the PR whose head is the branch, or {@code null} if there is none
+     */
+    @Nullable
+    public Long getThreadByBranch(String repo, String branch) {
+        final var pr = prs.getByBranch(repo, branch);
+        return pr == null ? null : pr.threadId();
+    }
+
+    @Nullable
+    private ManagedPR find(String repo, int number) {
+        return prs.get(repo, number);
+    }
+
+    // Only reads the database, so that startup doesn't depend on GitHub
+    private void load() {
+        jdbi.useExtension(PullRequestsDAO.class, db -> db.getAll().forEach(data -> prs.add(new ManagedPR(data.repo(), data.number(), data.threadId()))));
+        jdbi.useExtension(PRBranchesDAO.class, db -> db.getAll().forEach(route -> {
+            final var pr = prs.getByThread(route.threadId());
+            if (pr != null)
+                prs.setBranch(pr, route.repo(), route.branch());
+        }));
+    }
+
+    /**
+     * Resolves the head branches of the PRs which don't have a stored one, in the background. <br>
+     * This is only needed for PRs linked before head branches were stored. Pushes to their branches are not routed until they are resolved.
+     *
+     * @return a future completed once all missing branches were resolved
+     */
+    public CompletableFuture<Void> resolveMissingBranches() {
+        final var missing = prs.snapshot().stream()
+                .filter(pr -> !prs.hasBranch(pr.threadId()))
+                .map(pr -> CompletableFuture.runAsync(() -> {
+                    try {
+                        limiter.acquire();
+                        try {
+                            updateBranch(pr, gitHub.getRepository(pr.repo()).getPullRequest(pr.number()));
+                        } finally {
+                            limiter.release();
+                        }
+                    } catch (Exception e) {
+                        TheInquisitor.LOGGER.warn("Could not resolve the head branch of PR {}#{}: ", pr.repo(), pr.number(), e);
+                    }
+                }, executor))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(missing);
+    }
+
+    /**
+     * @return the amount of managed PRs
+     */
+    public int size() {
+        return prs.size();
+    }
+
+    private void track(ManagedPR managedPR, GHPullRequest pr) {
+        prs.add(managedPR);
+        updateBranch(managedPR, pr);
+    }
+
+    private void updateBranch(ManagedPR managedPR, GHPullRequest pr) {
+        // Pushes are delivered by the repository the head branch lives in, which is a fork most of the time
+        final var head = pr.getHead();
+        if (head.getRepository() == null)
+            return; // The fork was deleted
+        final var repo = head.getRepository().getFullName();
+        final var branch = head.getRef();
+        if (prs.setBranch(managedPR, repo, branch))
+            jdbi.useExtension(PRBranchesDAO.class, db -> db.insert(managedPR.threadId(), repo, branch));
+    }
+
+    private void untrack(ManagedPR managedPR) {
+        if (prs.remove(managedPR))
+            forget(managedPR);
+    }
+
+    private void forget(ManagedPR managedPR) {
+        poller.invalidate(managedPR.repo(), managedPR.number());
+        jdbi.useExtension(PRBranchesDAO.class, db -> db.remove(managedPR.threadId()));
+    }
+
     @Nullable
     @CanIgnoreReturnValue
     public ManagedPR remove(long threadId) {
-        final var old = prs.stream().filter(pr -> pr.threadId() == threadId)
-                .findFirst();
-        if (old.isPresent()) {
-            prs.remove(old.get());
-            return old.get();
-        }
-        return null;
+        final var old = prs.remove(threadId);
+        if (old != null)
+            forget(old);
+        return old;
     }
 
     public MessageBuilder makePREmbed(GHPullRequest pr) throws IOException {
@@ -176,59 +400,103 @@ public class ManagedPRs implements ThrowingRunnable {
                 .build();
     }
 
-    public static List<MessageEmbed> makeCommitEmbeds(GHPullRequest pr, List<GHPullRequestCommitDetail> commitDetails) {
-        final var repo = pr.getHead().getRepository(); // TODO maybe try to get the commits repo from what the detail provides?
-        final var byAuthor = new ArrayListValuedHashMap<GHUser, GHCommit>();
-        commitDetails.stream()
-                .map(GHPullRequestCommitDetail::getSha)
-                .map(sha -> {
-                    try {
-                        return repo.getCommit(sha);
-                    } catch (IOException ignored) {
-                    }
-                    return null;
-                })
+    /**
+     * Makes the embeds announcing new commits, one per author. <br>
+     * The embeds are built from the data listed with the commits, so only the display names of the authors
+     * need to be looked up, which happens in parallel through the shared {@link #authorNames} cache.
+     */
+    public List<MessageEmbed> makeCommitEmbeds(GHPullRequest pr, List<GHAccessor.PRCommit> commits) {
+        final var byAuthor = new LinkedHashMap<String, List<GHAccessor.PRCommit>>();
+        for (final var commit : commits) {
+            final var login = commit.authorLogin();
+            byAuthor.computeIfAbsent(login == null ? "git:" + getGitAuthor(commit) : login, k -> new ArrayList<>()).add(commit);
+        }
+        final var names = resolveAuthorNames(commits.stream()
+                .map(GHAccessor.PRCommit::authorLogin)
                 .filter(Objects::nonNull)
-                .forEach(commit -> {
-                    try {
-                        final var author = commit.getAuthor();
-                        byAuthor.put(author, commit);
-                    } catch (IOException ignored) {
-                    }
-                });
+                .collect(Collectors.toSet()));
+
         final var embeds = new ArrayList<MessageEmbed>();
-        byAuthor.asMap().forEach((user, commits) -> {
-            try {
-                final var commitsList = (List<GHCommit>) commits;
-                final var name = user.getName();
-                final var description = commits.stream()
-                        .map(detail -> "[`%s`](%s) %s - %s".formatted(
-                                detail.getSHA1().substring(0, 7),
-                                detail.getHtmlUrl().toString(),
-                                limit(getMessage(detail), 50),
-                                name
-                        ))
-                        .reduce("", (a, b) -> a + "\n" + b);
-                final var lastCommit = commitsList.get(commitsList.size() - 1);
-                embeds.add(new EmbedBuilder()
-                        .setAuthor(user.getName(), user.getHtmlUrl().toString(), user.getAvatarUrl())
-                        .setTitle("[" + pr.getRepository().getName() + "] " + commits.size() + " new commit" + (commits.size() > 1 ? "s" : ""), lastCommit.getHtmlUrl().toString())
-                        .setDescription(limit(description, MessageEmbed.DESCRIPTION_MAX_LENGTH))
-                        .setColor(Color.PINK)
-                        .setTimestamp(lastCommit.getCommitDate().toInstant())
-                        .build());
-            } catch (Exception ignored) {
-            }
+        byAuthor.values().forEach(authorCommits -> {
+            final var first = authorCommits.get(0);
+            final var name = first.authorLogin() == null ? getGitAuthor(first) : names.get(first.authorLogin());
+            final var description = authorCommits.stream()
+                    .map(commit -> "[`%s`](%s) %s - %s".formatted(
+                            commit.detail().getSha().substring(0, 7),
+                            commit.detail().getHtmlUrl(),
+                            limit(commit.detail().getCommit().getMessage(), 50),
+                            name
+                    ))
+                    .reduce("", (a, b) -> a + "\n" + b);
+            final var lastCommit = authorCommits.get(authorCommits.size() - 1).detail();
+            final var committer = lastCommit.getCommit().getCommitter();
+            embeds.add(new EmbedBuilder()
+                    .setAuthor(name, first.authorHtmlUrl(), first.authorAvatarUrl())
+                    .setTitle("[" + pr.getRepository().getName() + "] " + authorCommits.size() + " new commit" + (authorCommits.size() > 1 ? "s" : ""), String.valueOf(lastCommit.getHtmlUrl()))
+                    .setDescription(limit(description, MessageEmbed.DESCRIPTION_MAX_LENGTH))
+                    .setColor(Color.PINK)
+                    .setTimestamp(committer == null || committer.getDate() == null ? null : committer.getDate().toInstant())
+                    .build());
         });
         return embeds;
     }
 
-    private static String getMessage(GHCommit commit) {
-        try {
-            return commit.getCommitShortInfo().getMessage();
-        } catch (IOException e) {
-            return "Cannot determine commit message.";
+    private static String getGitAuthor(GHAccessor.PRCommit commit) {
+        final var author = commit.detail().getCommit().getAuthor();
+        return author == null || author.getName() == null ? "Unknown" : author.getName();
+    }
+
+    /**
+     * Resolves the display names of GitHub users, falling back to their login if they don't have one or the lookup fails.
+     */
+    private Map<String, String> resolveAuthorNames(Set<String> logins) {
+        final var futures = new HashMap<String, CompletableFuture<String>>();
+        for (final var login : logins) {
+            // Copy the cached future so that the fallbacks don't end up in the cache
+            futures.put(login, authorNames.get(login, this::lookUpAuthorName)
+                    .copy()
+                    .completeOnTimeout(login, AUTHOR_LOOKUP_TIMEOUT, TimeUnit.SECONDS)
+                    .exceptionally(e -> {
+                        TheInquisitor.LOGGER.warn("Could not look up GitHub user {}: ", login, e);
+                        return login;
+                    }));
         }
+        CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).join();
+        final var names = new HashMap<String, String>();
+        futures.forEach((login, name) -> names.put(login, name.join()));
+        return names;
+    }
+
+    private CompletableFuture<String> lookUpAuthorName(String login, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            authorLookups.acquireUninterruptibly();
+            try {
+                final var name = gitHub.getUser(login).getName();
+                return name == null || name.isBlank() ? login : name;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                authorLookups.release();
+            }
+        }, executor);
+    }
+
+    public static MessageEmbed makeReviewEmbed(GHPullRequest pr, GHPullRequestReview review, GHUser reviewer) {
+        final var state = review.getState();
+        final int colour;
+        if (state == GHPullRequestReviewState.APPROVED)
+            colour = 0x3fb950;
+        else if (state == GHPullRequestReviewState.CHANGES_REQUESTED)
+            colour = 0xf85149;
+        else
+            colour = 0x8b949e;
+        return new EmbedBuilder()
+                .setAuthor(reviewer.getLogin(), reviewer.getHtmlUrl().toString(), reviewer.getAvatarUrl())
+                .setTitle("New review on pull request #" + pr.getNumber(), review.getHtmlUrl().toString())
+                .setDescription(limit("`" + state + "`" + (review.getBody() == null ? "" : "\n" + review.getBody()), MessageEmbed.DESCRIPTION_MAX_LENGTH))
+                .setColor(colour)
+                .setTimestamp(Instant.now())
+                .build();
     }
 
     public static MessageEmbed makeStateChangeEmbed(GHPullRequest pr, PullRequestsDAO.PRState oldState, PullRequestsDAO.PRState newState) throws IOException {
@@ -245,12 +513,12 @@ public class ManagedPRs implements ThrowingRunnable {
                 .build();
     }
 
-    public static MessageEmbed makeLabelsDiffEmbed(GHPullRequest pr, Stream<GHLabel> added, Stream<GHLabel> removed) {
+    public static MessageEmbed makeLabelsDiffEmbed(GHPullRequest pr, Stream<String> added, Stream<String> removed) {
         final var embed = new EmbedBuilder()
                 .setTitle("Labels Updated", pr.getHtmlUrl().toString())
                 .setColor(Color.LIGHT_GRAY);
-        final var addedCombined = String.join(", ", added.map(l -> "`" + l.getName() + "`").toList());
-        final var removedCombined = String.join(", ", removed.map(l -> "`" + l.getName() + "`").toList());
+        final var addedCombined = String.join(", ", added.map(l -> "`" + l + "`").toList());
+        final var removedCombined = String.join(", ", removed.map(l -> "`" + l + "`").toList());
         if (!addedCombined.isBlank())
             embed.addField("Added", addedCombined, false);
         if (!removedCombined.isBlank())
@@ -293,57 +561,131 @@ public class ManagedPRs implements ThrowingRunnable {
     @Override
     public void run() throws Throwable {
         final var timer = StopWatch.createStarted();
-
-        for (final var it = prs.iterator(); it.hasNext();) {
-            final var pr = it.next();
-            checkPR(pr);
-            if (it.hasNext())
-                Thread.sleep(100L); // Let's wait before the next request, shall we
+        final var requestsBefore = poller.getRequestCount();
+        final var notModifiedBefore = poller.getNotModifiedCount();
+
+        // PRs of repositories which deliver the webhooks replacing polling are only checked during reconciliation
+        final var now = Instant.now();
+        final var reconcile = !now.isBefore(lastReconciliation.plus(config.get().webhookReconciliationInterval, ChronoUnit.MINUTES));
+        if (reconcile)
+            lastReconciliation = now;
+        final var snapshot = prs.snapshot().stream()
+                .filter(pr -> reconcile || !isWebhookDriven(pr.repo()))
+                .toList();
+
+        final var sweep = new Sweep();
+        // Start tracking writes before loading the old data, so that writes made in the meantime aren't shadowed by it
+        this.sweep = sweep;
+        try {
+            readJdbi.useExtension(PullRequestsDAO.class, db -> db.getAll()
+                    .forEach(data -> sweep.old.put(new ManagedPR(data.repo(), data.number(), data.threadId()), data)));
+
+            final Map<ManagedPR, PullRequestsDAO.PRData> prefetched = config.get().batchPRFetching ? batchFetcher.fetch(snapshot) : Map.of();
+            final var checks = new ArrayList<CompletableFuture<Void>>(snapshot.size());
+            for (final var pr : snapshot) {
+                if (!limiter.hasBudget()) {
+                    TheInquisitor.LOGGER.warn("Skipping {} Pull Request checks as the GitHub rate limit is almost exhausted", snapshot.size() - checks.size());
+                    break;
+                }
+                limiter.acquire();
+                checks.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        checkPR(pr, prefetched.get(pr), true);
+                    } catch (Throwable e) {
+                        TheInquisitor.LOGGER.error("Exception trying to check for updates of PR {}#{}: ", pr.repo(), pr.number(), e);
+                    } finally {
+                        limiter.release();
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(checks.toArray(CompletableFuture[]::new)).join();
+        } finally {
+            flush(sweep);
         }
 
         timer.stop();
         if (timer.getTime(TimeUnit.SECONDS) > 3)
             TheInquisitor.LOGGER.warn("Checking Pull Request updates took {} seconds", timer.getTime(TimeUnit.SECONDS));
+        TheInquisitor.LOGGER.debug("{} out of {} Pull Request checks were served by 304 Not Modified responses ({} in total)",
+                poller.getNotModifiedCount() - notModifiedBefore, poller.getRequestCount() - requestsBefore, poller.getNotModifiedCount());
+    }
+
+    private void checkPR(ManagedPR managedPR, @Nullable PullRequestsDAO.PRData prefetched, boolean deferWrites) throws IOException {
+        // Webhooks and sweeps may check the same PR at the same time, which would result in duplicate messages
+        final var lock = checkLocks.get(managedPR);
+        lock.lock();
+        try {
+            checkPRLocked(managedPR, prefetched, deferWrites);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    private void checkPR(ManagedPR managedPR) throws IOException {
-        final var pr = resolvePR(managedPR);
-        final var oldData = withExtension(db -> db.getData(managedPR.repo(), managedPR.number()));
+    private void checkPRLocked(ManagedPR managedPR, @Nullable PullRequestsDAO.PRData prefetched, boolean deferWrites) throws IOException {
+        final GHPullRequest pr;
+        if (prefetched == null) {
+            pr = poller.poll(managedPR.repo(), managedPR.number());
+            if (pr == null)
+                return; // Nothing changed since the last check
+        } else {
+            if (prefetched.equals(getData(managedPR)))
+                return;
+            // Something changed, so we need the full PR to generate the embeds
+            pr = poller.fetch(managedPR.repo(), managedPR.number());
+        }
+        try {
+            checkPR(managedPR, pr, deferWrites);
+        } catch (IOException | RuntimeException e) {
+            // Make sure the next check doesn't skip the changes we failed to process
+            poller.invalidate(managedPR.repo(), managedPR.number());
+            throw e;
+        }
+    }
+
+    private void checkPR(ManagedPR managedPR, GHPullRequest pr, boolean deferWrites) throws IOException {
+        updateBranch(managedPR, pr);
+
+        final var oldData = getData(managedPR);
         final var newData = PullRequestsDAO.PRData.from(pr, managedPR.threadId());
         if (oldData.equals(newData))
             return;
 
-        jdbi.useExtension(PullRequestsDAO.class, db -> db.update(newData));
+        persist(managedPR, newData, deferWrites);
 
         final var thread = jda.get().getThreadChannelById(managedPR.threadId());
         if (thread == null) {
             // So... we lost the thread
-            jdbi.useExtension(PullRequestsDAO.class, db -> db.remove(managedPR.threadId()));
-            prs.remove(managedPR);
+            delete(managedPR);
+            untrack(managedPR);
             return;
         }
 
-        if (!Objects.equals(newData.title(), oldData.title()) || !Objects.equals(newData.description(), oldData.description())) {
+        if (newData.titleHash() != oldData.titleHash() || newData.descriptionHash() != oldData.descriptionHash()) {
+            // The texts are only read by the edit modals, so they don't need to be part of the batched sweep writes
+            jdbi.useExtension(PullRequestsDAO.class, db -> db.updateText(newData.repo(), newData.number(), pr.getTitle(), pr.getBody()));
             updateParentMessage(pr, thread);
         }
 
-        if (newData.comments() > oldData.comments()) {
-            // So... we have new comments.
-            final var comments = pr.listComments().withPageSize(100).toList();
-            // We want to start from where we left
-            final var newComments = comments.subList(oldData.comments(), comments.size());
-            RestAction.allOf(newComments.stream()
-                            .map(fun(comment -> thread.sendMessageEmbeds(makeCommentEmbed(comment))))
-                            .filter(Objects::nonNull).toList())
-                    .queue();
+        final var cursor = Objects.requireNonNullElse(withExtension(db -> db.getCursor(managedPR.repo(), managedPR.number())), PullRequestsDAO.PRCursor.EMPTY);
+        // Deleted comments lower the count, so any change may mean new comments
+        if (newData.comments() != oldData.comments()) {
+            final var newComments = fetchNewComments(pr, oldData.comments(), cursor);
+            if (!newComments.isEmpty()) {
+                RestAction.allOf(newComments.stream()
+                                .map(fun(comment -> thread.sendMessageEmbeds(makeCommentEmbed(comment))))
+                                .filter(Objects::nonNull).toList())
+                        .queue();
+                final var last = newComments.get(newComments.size() - 1);
+                final var lastCreatedAt = last.getCreatedAt().getTime();
+                jdbi.useExtension(PullRequestsDAO.class, db -> db.updateCommentCursor(managedPR.repo(), managedPR.number(), last.getId(), lastCreatedAt));
+            }
         }
 
         if (newData.commits() > oldData.commits()) {
-            // So... we have new commits.
-            final var commits = pr.listCommits().withPageSize(100).toList();
-            // We want to start from where we left
-            final var newCommits = commits.subList(oldData.commits(), commits.size());
-            thread.sendMessageEmbeds(makeCommitEmbeds(pr, newCommits)).queue();
+            final var newCommits = fetchNewCommits(pr, newData.commits(), oldData.commits(), cursor.lastCommitSha());
+            if (!newCommits.isEmpty())
+                thread.sendMessageEmbeds(makeCommitEmbeds(pr, newCommits)).queue();
+            jdbi.useExtension(PullRequestsDAO.class, db -> db.updateCommitCursor(managedPR.repo(), managedPR.number(), pr.getHead().getSha()));
         }
 
         if (oldData.state() != newData.state()) {
@@ -351,25 +693,26 @@ public class ManagedPRs implements ThrowingRunnable {
             updateParentMessage(pr, thread);
         }
 
-        if (!Iterables.elementsEqual(oldData.labels(), newData.labels())) {
-            final var repoLabels = pr.getRepository().listLabels()
-                    .withPageSize(100)
-                    .toList()
-                    .stream()
-                    .collect(Collectors.toMap(GHLabel::getId, Function.identity()));
-
+        if (!oldData.labels().equals(newData.labels())) {
+            final var addedIds = Sets.difference(newData.labels(), oldData.labels());
+            final var removedIds = Sets.difference(oldData.labels(), newData.labels());
             final var added = pr.getLabels().stream()
-                    .filter(label -> !oldData.labels().contains(label.getId()));
-            final var removed = oldData.labels().stream()
-                    .filter(label -> !newData.labels().contains(label))
-                    .map(repoLabels::get);
+                    .filter(label -> addedIds.contains(label.getId()))
+                    .map(GHLabel::getName);
+            // Removed labels are no longer on the PR, so we need to look them up in the repository
+            final var removed = new ArrayList<String>();
+            for (final var id : removedIds) {
+                final var name = labels.getName(managedPR.repo(), id);
+                if (name != null)
+                    removed.add(name);
+            }
 
-            thread.sendMessageEmbeds(makeLabelsDiffEmbed(pr, added, removed)).queue();
+            thread.sendMessageEmbeds(makeLabelsDiffEmbed(pr, added, removed.stream())).queue();
         }
 
         if (newData.state() == PullRequestsDAO.PRState.MERGED && oldData.state() != PullRequestsDAO.PRState.MERGED) {
-            prs.remove(managedPR);
-            jdbi.useExtension(PullRequestsDAO.class, db -> db.remove(thread.getIdLong()));
+            untrack(managedPR);
+            delete(managedPR);
             thread.sendMessage("""
                                     The PR linked with this thread has been merged, and as such, this thread will be archived and the link will be removed.
                                     Note: the PR can always be re-linked using the button attached to this message.""")
@@ -383,6 +726,110 @@ public class ManagedPRs implements ThrowingRunnable {
         }
     }
 
+    /**
+     * Fetches the comments of a PR which were created after the last one sent to its thread.
+     */
+    private List<GHIssueComment> fetchNewComments(GHPullRequest pr, int oldCount, PullRequestsDAO.PRCursor cursor) throws IOException {
+        if (cursor.lastCommentId() == null) {
+            // PRs which have never had a cursor are sliced by the amount of comments we knew of, one last time
+            final var comments = GHAccessor.listCommentsSince(gitHub, pr, null);
+            return comments.subList(Math.min(oldCount, comments.size()), comments.size());
+        }
+        // "since" filters by update time, so edited older comments need to be filtered out
+        final var lastId = cursor.lastCommentId();
+        return GHAccessor.listCommentsSince(gitHub, pr, cursor.lastCommentAt()).stream()
+                .filter(comment -> comment.getId() > lastId)
+                .sorted(Comparator.comparingLong(GHIssueComment::getId))
+                .toList();
+    }
+
+    /**
+     * Fetches the commits of a PR which were pushed after the last one sent to its thread, paging from the newest commits.
+     */
+    private List<GHAccessor.PRCommit> fetchNewCommits(GHPullRequest pr, int count, int oldCount, @Nullable String lastSha) throws IOException {
+        final var expected = Math.max(0, count - oldCount);
+        if (lastSha == null && expected == 0)
+            return List.of();
+        final var found = new ArrayDeque<GHAccessor.PRCommit>();
+        // GitHub only lists the first commits of a PR
+        final var listed = Math.min(count, MAX_LISTED_COMMITS);
+        for (int page = (listed + COMMITS_PAGE_SIZE - 1) / COMMITS_PAGE_SIZE; page >= 1; page--) {
+            final var commits = GHAccessor.getCommitsPage(gitHub, pr, page, COMMITS_PAGE_SIZE);
+            for (int i = commits.size() - 1; i >= 0; i--) {
+                final var commit = commits.get(i);
+                if (commit.detail().getSha().equals(lastSha))
+                    return List.copyOf(found);
+                found.addFirst(commit);
+                if (lastSha == null && found.size() == expected)
+                    return List.copyOf(found);
+            }
+        }
+        // The last commit we sent is gone, meaning that the history was rewritten, so fall back to the amount of new commits
+        return found.stream().skip(Math.max(0, found.size() - expected)).toList();
+    }
+
+    @Nullable
+    private PullRequestsDAO.PRData getData(ManagedPR managedPR) {
+        final var sweep = this.sweep;
+        if (sweep != null) {
+            final var written = sweep.written.get(managedPR);
+            if (written != null)
+                return written;
+            final var old = sweep.old.get(managedPR);
+            if (old != null)
+                return old;
+        }
+        return withExtension(db -> db.getData(managedPR.repo(), managedPR.number()));
+    }
+
+    private void persist(ManagedPR managedPR, PullRequestsDAO.PRData data, boolean defer) {
+        writeLock.lock();
+        try {
+            final var sweep = this.sweep;
+            if (sweep != null)
+                sweep.written.put(managedPR, data);
+            if (!defer || sweep == null)
+                jdbi.useExtension(PullRequestsDAO.class, db -> db.update(data));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void delete(ManagedPR managedPR) {
+        writeLock.lock();
+        try {
+            final var sweep = this.sweep;
+            // Don't let the end of the sweep bring the row back
+            if (sweep != null)
+                sweep.written.remove(managedPR);
+            jdbi.useExtension(PullRequestsDAO.class, db -> db.remove(managedPR.threadId()));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void flush(Sweep sweep) {
+        writeLock.lock();
+        try {
+            // Contains the latest data of each PR, including the data already written outside the sweep, so nothing older overwrites it
+            final var rows = List.copyOf(sweep.written.values());
+            if (!rows.isEmpty())
+                jdbi.useExtension(PullRequestsDAO.class, db -> db.update(rows));
+        } catch (RuntimeException e) {
+            // The poller already stored the validators of the new data, so make sure the next sweep doesn't skip the changes we failed to write
+            sweep.written.keySet().forEach(pr -> poller.invalidate(pr.repo(), pr.number()));
+            throw e;
+        } finally {
+            this.sweep = null;
+            writeLock.unlock();
+        }
+    }
+
+    private static final class Sweep {
+        private final Map<ManagedPR, PullRequestsDAO.PRData> old = new ConcurrentHashMap<>();
+        private final Map<ManagedPR, PullRequestsDAO.PRData> written = new ConcurrentHashMap<>();
+    }
+
     private void updateParentMessage(GHPullRequest pr, ThreadChannel thread) {
         thread.retrieveParentMessage().queue(msg -> {
             try {
@@ -405,11 +852,7 @@ public class ManagedPRs implements ThrowingRunnable {
     }
 
     private <T, X extends Exception> T withExtension(ExtensionCallback<T, PullRequestsDAO, X> callback) throws X {
-        return jdbi.withExtension(PullRequestsDAO.class, callback);
-    }
-
-    private GHPullRequest resolvePR(ManagedPR pr) throws IOException {
-        return gitHub.getRepository(pr.repo()).getPullRequest(pr.number());
+        return readJdbi.withExtension(PullRequestsDAO.class, callback);
     }
 
     private void onButtonInteraction(ButtonInteractionContext context) {
@@ -420,16 +863,19 @@ public class ManagedPRs implements ThrowingRunnable {
                 if (!(context.getChannel() instanceof ThreadChannel thread)) return;
                 final var pr = context.getArguments().get(0).toLowerCase(Locale.ROOT);
                 final int number = context.getArgument(1, () -> 0, Integer::parseInt);
-                prs.add(new ManagedPR(pr, number, thread.getIdLong()));
-                final var data = new AtomicReference<PullRequestsDAO.PRData>();
+                final var managedPR = new ManagedPR(pr, number, thread.getIdLong());
+                final var ghPR = new AtomicReference<GHPullRequest>();
                 try {
-                    data.set(PullRequestsDAO.PRData.from(gitHub.getRepository(pr).getPullRequest(number), thread.getIdLong()));
-                } catch (IOException ignored) {}
+                    ghPR.set(gitHub.getRepository(pr).getPullRequest(number));
+                    track(managedPR, ghPR.get());
+                } catch (IOException ignored) {
+                    prs.add(managedPR);
+                }
                 jdbi.useExtension(PullRequestsDAO.class, db -> {
-                    if (data.get() == null) {
+                    if (ghPR.get() == null) {
                         db.create(pr, number, thread.getIdLong());
                     } else {
-                        db.update(data.get());
+                        db.update(PullRequestsDAO.PRData.from(ghPR.get(), thread.getIdLong()), PullRequestsDAO.PRText.from(ghPR.get()));
                     }
                 });
                 thread.getManager()
@@ -440,7 +886,7 @@ public class ManagedPRs implements ThrowingRunnable {
             case EDIT_TITLE -> {
                 final var repo = context.getArguments().get(0);
                 final var num = context.getArgument(1, () -> 0, Integer::parseInt);
-                final var oldTitle = withExtension(db -> db.getData(repo, num));
+                final var oldTitle = withExtension(db -> db.getText(repo, num));
                 final var modal = components.createModal("Update PR title", Component.Lifespan.TEMPORARY, context.getArguments(), "edit_title")
                         .addActionRow(TextInput.create("title", "New Title", TextInputStyle.PARAGRAPH)
                                 .setRequired(true)
@@ -453,7 +899,7 @@ public class ManagedPRs implements ThrowingRunnable {
             case EDIT_DESCRIPTION -> {
                 final var repo = context.getArguments().get(0);
                 final var num = context.getArgument(1, () -> 0, Integer::parseInt);
-                final var oldDescription = withExtension(db -> db.getData(repo, num));
+                final var oldDescription = withExtension(db -> db.getText(repo, num));
                 final var modal = components.createModal("Update PR description", Component.Lifespan.TEMPORARY, context.getArguments(), "edit_description")
                         .addActionRow(TextInput.create("description", "New Description", TextInputStyle.PARAGRAPH)
                                 .setRequired(true)
@@ -0,0 +1,127 @@
+package io.github.themoddinginquisition.theinquisitor.commands.pr;
+
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.github.themoddinginquisition.theinquisitor.TheInquisitor;
+import io.github.themoddinginquisition.theinquisitor.db.PullRequestsDAO;
+import io.github.themoddinginquisition.theinquisitor.github.LabelCatalog;
+import org.kohsuke.github.GHAccessor;
+import org.kohsuke.github.GitHub;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fetches the data of multiple pull requests using a single GraphQL query per {@linkplain #BATCH_SIZE batch}.
+ */
+class PRBatchFetcher {
+    public static final int BATCH_SIZE = 25;
+
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private static final String PR_FRAGMENT = """
+            fragment PRFields on PullRequest {
+              title
+              body
+              state
+              isDraft
+              merged
+              labels(first: 100) { nodes { name } }
+              comments { totalCount }
+              commits { totalCount }
+            }""";
+
+    private final GitHub gitHub;
+    // GraphQL doesn't expose the REST IDs of labels, which is what we store, so we need to map their names
+    private final LabelCatalog labels;
+
+    PRBatchFetcher(GitHub gitHub, LabelCatalog labels) {
+        this.gitHub = gitHub;
+        this.labels = labels;
+    }
+
+    /**
+     * Fetches the data of the given pull requests. <br>
+     * Pull requests which could not be fetched will not be present in the returned map.
+     *
+     * @param prs the pull requests to fetch
+     * @return the fetched data
+     */
+    public Map<ManagedPRs.ManagedPR, PullRequestsDAO.PRData> fetch(Collection<ManagedPRs.ManagedPR> prs) {
+        final var data = new HashMap<ManagedPRs.ManagedPR, PullRequestsDAO.PRData>(prs.size());
+        for (final var batch : Lists.partition(List.copyOf(prs), BATCH_SIZE)) {
+            try {
+                fetchBatch(batch, data);
+            } catch (Exception e) {
+                TheInquisitor.LOGGER.warn("Exception trying to batch fetch {} pull requests: ", batch.size(), e);
+            }
+        }
+        return data;
+    }
+
+    private void fetchBatch(List<ManagedPRs.ManagedPR> batch, Map<ManagedPRs.ManagedPR, PullRequestsDAO.PRData> data) throws IOException {
+        final var query = new StringBuilder("query {\n");
+        for (int i = 0; i < batch.size(); i++) {
+            final var pr = batch.get(i);
+            final var split = pr.repo().split("/", 2);
+            query.append("  pr").append(i).append(": repository(owner: ").append(quote(split[0]))
+                    .append(", name: ").append(quote(split[1])).append(") { pullRequest(number: ")
+                    .append(pr.number()).append(") { ...PRFields } }\n");
+        }
+        query.append("}\n").append(PR_FRAGMENT);
+
+        final var response = GSON.fromJson(GHAccessor.graphQL(gitHub, query.toString()), JsonObject.class);
+        if (response.has("errors"))
+            TheInquisitor.LOGGER.debug("Batch fetching pull requests returned errors: {}", response.get("errors"));
+        final var responseData = response.getAsJsonObject("data");
+        if (responseData == null)
+            return;
+
+        for (int i = 0; i < batch.size(); i++) {
+            final var repo = responseData.get("pr" + i);
+            if (!isObject(repo) || !isObject(repo.getAsJsonObject().get("pullRequest")))
+                continue;
+            final var pr = batch.get(i);
+            try {
+                data.put(pr, toData(pr, repo.getAsJsonObject().getAsJsonObject("pullRequest")));
+            } catch (IOException e) {
+                TheInquisitor.LOGGER.debug("Could not batch fetch pull request {}#{}: ", pr.repo(), pr.number(), e);
+            }
+        }
+    }
+
+    private PullRequestsDAO.PRData toData(ManagedPRs.ManagedPR managedPR, JsonObject json) throws IOException {
+        final var labels = new HashSet<Long>();
+        for (final var label : json.getAsJsonObject("labels").getAsJsonArray("nodes")) {
+            labels.add(this.labels.getId(managedPR.repo(), label.getAsJsonObject().get("name").getAsString()));
+        }
+        final var state = json.get("state").getAsString();
+        return new PullRequestsDAO.PRData(
+                managedPR.repo(), managedPR.number(), managedPR.threadId(),
+                json.getAsJsonObject("comments").get("totalCount").getAsInt(), labels,
+                PullRequestsDAO.PRData.hash(getString(json, "title")), PullRequestsDAO.PRData.hash(getString(json, "body")),
+                PullRequestsDAO.PRState.getState(json.get("merged").getAsBoolean(), json.get("isDraft").getAsBoolean(), !state.equals("OPEN")),
+                json.getAsJsonObject("commits").get("totalCount").getAsInt()
+        );
+    }
+
+    private static String getString(JsonObject json, String key) {
+        final var element = json.get(key);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private static boolean isObject(JsonElement element) {
+        return element != null && element.isJsonObject();
+    }
+
+    private static String quote(String str) {
+        return GSON.toJson(str);
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.themoddinginquisition.theinquisitor.commands.pr;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registry of {@linkplain ManagedPRs.ManagedPR managed PRs}, indexed by thread, by PR and by head branch. <br>
+ * Lookups are lock-free, while modifications are serialized so that the indexes stay consistent with each other.
+ * Iteration should happen over {@linkplain #snapshot() snapshots}, which are not affected by concurrent modifications.
+ */
+final class PRRegistry {
+    private final Map<Long, ManagedPRs.ManagedPR> byThread = new ConcurrentHashMap<>();
+    private final Map<PRKey, ManagedPRs.ManagedPR> byPR = new ConcurrentHashMap<>();
+    private final Map<String, ManagedPRs.ManagedPR> byBranch = new ConcurrentHashMap<>();
+    private final Map<Long, String> branches = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a PR to the registry, replacing any PR previously linked to the same thread.
+     *
+     * @param pr the PR to add
+     */
+    synchronized void add(ManagedPRs.ManagedPR pr) {
+        final var old = byThread.put(pr.threadId(), pr);
+        if (old != null)
+            unindex(old);
+        byPR.put(PRKey.of(pr), pr);
+    }
+
+    /**
+     * Sets the head branch of a registered PR, used for routing pushes.
+     *
+     * @param pr         the PR
+     * @param headRepo   the full name of the repository the head branch is in
+     * @param headBranch the name of the head branch
+     * @return if the head branch of the PR changed
+     */
+    synchronized boolean setBranch(ManagedPRs.ManagedPR pr, String headRepo, String headBranch) {
+        // The PR may have been unlinked in the meantime
+        if (!pr.equals(byThread.get(pr.threadId())))
+            return false;
+        final var key = branchKey(headRepo, headBranch);
+        final var old = branches.put(pr.threadId(), key);
+        if (key.equals(old))
+            return false;
+        if (old != null)
+            byBranch.remove(old, pr);
+        byBranch.put(key, pr);
+        return true;
+    }
+
+    /**
+     * @param threadId the ID of the thread of the PR
+     * @return if the head branch of the PR linked to the thread is known
+     */
+    boolean hasBranch(long threadId) {
+        return branches.containsKey(threadId);
+    }
+
+    /**
+     * Removes the PR linked to a thread.
+     *
+     * @param threadId the ID of the thread
+     * @return the removed PR, or {@code null} if the thread wasn't linked to any
+     */
+    @Nullable
+    synchronized ManagedPRs.ManagedPR remove(long threadId) {
+        final var old = byThread.remove(threadId);
+        if (old != null)
+            unindex(old);
+        return old;
+    }
+
+    /**
+     * Removes a PR, if it is still registered.
+     *
+     * @param pr the PR to remove
+     * @return if the PR was removed
+     */
+    synchronized boolean remove(ManagedPRs.ManagedPR pr) {
+        if (!byThread.remove(pr.threadId(), pr))
+            return false;
+        unindex(pr);
+        return true;
+    }
+
+    private void unindex(ManagedPRs.ManagedPR pr) {
+        // Another thread may have been linked to the same PR since, so only remove our own mappings
+        byPR.remove(PRKey.of(pr), pr);
+        final var branch = branches.remove(pr.threadId());
+        if (branch != null)
+            byBranch.remove(branch, pr);
+    }
+
+    @Nullable
+    ManagedPRs.ManagedPR getByThread(long threadId) {
+        return byThread.get(threadId);
+    }
+
+    @Nullable
+    ManagedPRs.ManagedPR get(String repo, int number) {
+        return byPR.get(new PRKey(repo, number));
+    }
+
+    /**
+     * @param repo   the full name of the repository of the branch
+     * @param branch the name of the branch
+     * @return the PR whose head is the given branch, or {@code null} if there is none
+     */
+    @Nullable
+    ManagedPRs.ManagedPR getByBranch(String repo, String branch) {
+        return byBranch.get(branchKey(repo, branch));
+    }
+
+    /**
+     * @return an immutable snapshot of the registered PRs
+     */
+    List<ManagedPRs.ManagedPR> snapshot() {
+        return List.copyOf(byThread.values());
+    }
+
+    int size() {
+        return byThread.size();
+    }
+
+    private static String branchKey(String repo, String branch) {
+        return (repo + "/" + branch).toLowerCase(Locale.ROOT);
+    }
+
+    private record PRKey(String repo, int number) {
+        private PRKey {
+            repo = repo.toLowerCase(Locale.ROOT);
+        }
+
+        static PRKey of(ManagedPRs.ManagedPR pr) {
+            return new PRKey(pr.repo(), pr.number());
+        }
+    }
+}
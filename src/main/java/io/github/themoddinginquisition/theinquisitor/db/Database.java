@@ -0,0 +1,93 @@
+package io.github.themoddinginquisition.theinquisitor.db;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.sqlobject.SqlObjectPlugin;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.function.LongSupplier;
+
+/**
+ * The SQLite database of the bot. <br>
+ * SQLite allows a single writer at a time, so writes go through a pool with a single connection, which acts as a queue
+ * for writers: they wait for the connection instead of failing with {@code SQLITE_BUSY}. Reads that don't need to be
+ * part of a write can use the {@linkplain #readOnly() read-only pool}, which, thanks to WAL journaling, is never blocked by the writer.
+ */
+public final class Database implements AutoCloseable {
+    private static final int BUSY_TIMEOUT_MILLIS = 10_000;
+    private static final int CACHE_SIZE_KIB = 16 * 1024;
+    private static final long MMAP_SIZE = 128L * 1024 * 1024;
+
+    private final HikariDataSource writer;
+    private final HikariDataSource readers;
+    private final Jdbi jdbi;
+    private final Jdbi readOnlyJdbi;
+
+    public Database(Path path, int readerPoolSize, LongSupplier slowQueryThresholdMillis) {
+        final var url = "jdbc:sqlite:" + path;
+        this.writer = createPool("SQLiteWriter", url, 1, false);
+        this.readers = createPool("SQLiteReaders", url, readerPoolSize, true);
+        final var logger = new SlowQueryLogger(slowQueryThresholdMillis);
+        this.jdbi = Jdbi.create(writer).installPlugin(new SqlObjectPlugin()).setSqlLogger(logger);
+        this.readOnlyJdbi = Jdbi.create(readers).installPlugin(new SqlObjectPlugin()).setSqlLogger(logger);
+    }
+
+    /**
+     * @return the data source of the writer connection, which should be used for migrations
+     */
+    public DataSource getDataSource() {
+        return writer;
+    }
+
+    /**
+     * @return the Jdbi instance used for writes, and reads that need to see the writes made before them
+     */
+    public Jdbi jdbi() {
+        return jdbi;
+    }
+
+    /**
+     * @return a Jdbi instance which may only be used for reads
+     */
+    public Jdbi readOnly() {
+        return readOnlyJdbi;
+    }
+
+    @Override
+    public void close() {
+        readers.close();
+        writer.close();
+    }
+
+    private static HikariDataSource createPool(String name, String url, int size, boolean readOnly) {
+        final var sqliteConfig = new SQLiteConfig();
+        sqliteConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        // In WAL mode, NORMAL only risks losing the last transactions on power loss, not corrupting the database
+        sqliteConfig.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        sqliteConfig.setCacheSize(-CACHE_SIZE_KIB);
+        sqliteConfig.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(MMAP_SIZE));
+        sqliteConfig.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+        if (!readOnly) {
+            // Take the write lock when the transaction starts, instead of failing if another connection wrote in the meantime
+            sqliteConfig.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+        }
+
+        final var dataSource = new SQLiteDataSource(sqliteConfig);
+        dataSource.setUrl(url);
+        dataSource.setDatabaseName("TheInquisitor");
+
+        final var config = new HikariConfig();
+        config.setPoolName(name);
+        config.setDataSource(dataSource);
+        config.setMaximumPoolSize(size);
+        config.setMinimumIdle(size);
+        config.setConnectionTimeout(30_000);
+        if (readOnly)
+            config.setConnectionInitSql("pragma query_only = true");
+        return new HikariDataSource(config);
+    }
+}
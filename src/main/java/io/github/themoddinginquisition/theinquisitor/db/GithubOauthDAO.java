@@ -17,7 +17,7 @@ public interface GithubOauthDAO extends Transactional<GithubOauthDAO> {
     void insertPlain(@Bind("user") long userId, @Bind("token") String token);
 
     default void insertEncrypted(long userId, String token) {
-        final var encryptedToken = TheInquisitor.getInstance().getEncryptor().encrypt(token);
+        final var encryptedToken = TheInquisitor.getInstance().getEncryptor().encrypt(userId, token);
         insertPlain(userId, encryptedToken);
     }
 
@@ -31,6 +31,6 @@ public interface GithubOauthDAO extends Transactional<GithubOauthDAO> {
     @Nullable
     default String getToken(long userId) {
         final var encrypted = getTokenPlain(userId);
-        return encrypted == null ? null : TheInquisitor.getInstance().getEncryptor().decrypt(encrypted);
+        return encrypted == null ? null : TheInquisitor.getInstance().getEncryptor().decrypt(userId, encrypted);
     }
 }
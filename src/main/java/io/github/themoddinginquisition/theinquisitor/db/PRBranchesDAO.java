@@ -0,0 +1,43 @@
+package io.github.themoddinginquisition.theinquisitor.db;
+
+import org.jdbi.v3.core.mapper.RowMapper;
+import org.jdbi.v3.core.statement.StatementContext;
+import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.jdbi.v3.sqlobject.transaction.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Stores the head branches of managed PRs, which are used for routing pushes to their threads.
+ */
+@RegisterRowMapper(PRBranchesDAO.BranchRoute.Mapper.class)
+public interface PRBranchesDAO extends Transactional<PRBranchesDAO> {
+
+    @SqlUpdate("insert or replace into pr_branches values (:thread, :repo, :branch)")
+    void insert(@Bind("thread") long threadId, @Bind("repo") String repo, @Bind("branch") String branch);
+
+    @SqlUpdate("delete from pr_branches where thread = :thread")
+    void remove(@Bind("thread") long threadId);
+
+    @SqlQuery("select * from pr_branches")
+    List<BranchRoute> getAll();
+
+    /**
+     * @param threadId the ID of the thread of the PR
+     * @param repo     the full name of the repository the head branch is in
+     * @param branch   the name of the head branch
+     */
+    record BranchRoute(long threadId, String repo, String branch) {
+        public static class Mapper implements RowMapper<BranchRoute> {
+            @Override
+            public BranchRoute map(ResultSet rs, StatementContext ctx) throws SQLException {
+                return new BranchRoute(rs.getLong("thread"), rs.getString("repo"), rs.getString("branch"));
+            }
+        }
+    }
+}
@@ -1,62 +1,166 @@
 package io.github.themoddinginquisition.theinquisitor.db;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import io.leangen.geantyref.TypeToken;
+import com.google.common.hash.Hashing;
 import org.jdbi.v3.core.mapper.RowMapper;
 import org.jdbi.v3.core.statement.StatementContext;
 import org.jdbi.v3.sqlobject.config.RegisterArgumentFactory;
 import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
 import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindMethods;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
 import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.jdbi.v3.sqlobject.transaction.Transaction;
 import org.jdbi.v3.sqlobject.transaction.Transactional;
 import org.kohsuke.github.GHAccessor;
 import org.kohsuke.github.GHIssueState;
 import org.kohsuke.github.GHLabel;
 import org.kohsuke.github.GHPullRequest;
 
-import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @RegisterRowMapper(PullRequestsDAO.PRData.Mapper.class)
+@RegisterRowMapper(PullRequestsDAO.PRText.Mapper.class)
+@RegisterRowMapper(PullRequestsDAO.PRCursor.Mapper.class)
 public interface PullRequestsDAO extends Transactional<PullRequestsDAO> {
 
-    Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
-    Type LONG_LIST_TYPE = new TypeToken<List<Long>>() {}.getType();
+    /**
+     * Selects the PRs along with their labels, as a comma-separated list in the {@code labels} column.
+     */
+    String SELECT_WITH_LABELS = "select p.*, (select group_concat(l.label) from pull_request_labels l where l.repo = p.repo and l.number = p.number) as labels from pull_requests p";
 
     @SqlUpdate("insert or replace into pull_requests(repo, number, thread) values (lower(:repo), :number, :thread)")
     void create(@Bind("repo") String repo, @Bind("number") int prNumber, @Bind("thread") long threadId);
 
-    @SqlUpdate("delete * from pull_requests where thread = :threadId")
-    void remove(@Bind("thread") long threadId);
+    @SqlUpdate("delete from pull_request_labels where (repo, number) in (select repo, number from pull_requests where thread = :thread)")
+    void removeLabels(@Bind("thread") long threadId);
 
-    @SqlUpdate("insert or replace into pull_requests values (lower(:repo), :number, :thread, :comments, :labels, :title, :body, :state, :commits)")
-    void update(@Bind("repo") String repo, @Bind("number") int prNumber, @Bind("thread") long threadId,
-                @Bind("comments") int comments, @Bind("labels") String labels,
-                @Bind("title") String title, @Bind("body") String description,
-                @Bind("state") int state, @Bind("commits") int commits);
+    @SqlUpdate("delete from pull_request_texts where (repo, number) in (select repo, number from pull_requests where thread = :thread)")
+    void removeText(@Bind("thread") long threadId);
+
+    @SqlUpdate("delete from pr_cursors where (repo, number) in (select repo, number from pull_requests where thread = :thread)")
+    void removeCursor(@Bind("thread") long threadId);
+
+    @SqlUpdate("delete from pull_requests where thread = :thread")
+    void removeRow(@Bind("thread") long threadId);
+
+    @Transaction
+    default void remove(long threadId) {
+        removeLabels(threadId);
+        removeText(threadId);
+        removeCursor(threadId);
+        removeRow(threadId);
+    }
+
+    @Nullable
+    @SqlQuery("select * from pr_cursors where repo = :repo and number = :number")
+    PRCursor getCursor(@Bind("repo") String repo, @Bind("number") int prNumber);
+
+    @SqlUpdate("insert into pr_cursors(repo, number, last_comment_id, last_comment_at) values (lower(:repo), :number, :id, :at) " +
+            "on conflict(repo, number) do update set last_comment_id = excluded.last_comment_id, last_comment_at = excluded.last_comment_at")
+    void updateCommentCursor(@Bind("repo") String repo, @Bind("number") int prNumber, @Bind("id") long commentId, @Bind("at") long createdAt);
+
+    @SqlUpdate("insert into pr_cursors(repo, number, last_commit_sha) values (lower(:repo), :number, :sha) " +
+            "on conflict(repo, number) do update set last_commit_sha = excluded.last_commit_sha")
+    void updateCommitCursor(@Bind("repo") String repo, @Bind("number") int prNumber, @Bind("sha") String sha);
+
+    @SqlBatch("insert or replace into pull_requests(repo, number, thread, comments, title_hash, description_hash, state, commits) values (lower(:repo), :number, :threadId, :comments, :titleHash, :descriptionHash, :stateId, :commits)")
+    void updateRows(@BindMethods Collection<PRData> data);
+
+    @SqlUpdate("insert or replace into pull_request_texts values (lower(:repo), :number, :title, :description)")
+    void updateText(@Bind("repo") String repo, @Bind("number") int prNumber, @Bind("title") String title, @Bind("description") String description);
+
+    /**
+     * Gets the full title and description of a PR. These are only stored for prefilling the edit modals, and are not
+     * part of {@link PRData}, which only has their hashes.
+     */
+    @Nullable
+    @SqlQuery("select title, description from pull_request_texts where repo = :repo and number = :number")
+    PRText getText(@Bind("repo") String repo, @Bind("number") int prNumber);
+
+    @Transaction
+    default void update(PRData data, PRText text) {
+        update(data);
+        updateText(data.repo(), data.number(), text.title(), text.description());
+    }
+
+    @SqlBatch("delete from pull_request_labels where repo = :repo and number = :number")
+    void clearLabels(@BindMethods Collection<PRData> data);
+
+    @SqlBatch("insert or ignore into pull_request_labels values (lower(:repo), :number, :label)")
+    void insertLabels(@Bind("repo") List<String> repos, @Bind("number") List<Integer> numbers, @Bind("label") List<Long> labels);
 
     default void update(PRData data) {
-        update(data.repo(), data.number(), data.threadId(), data.comments(), GSON.toJson(data.labels(), LONG_LIST_TYPE),
-                data.title(), data.description(), data.state().ordinal() + 1, data.commits());
+        update(List.of(data));
+    }
+
+    @Transaction
+    default void update(Collection<PRData> data) {
+        updateRows(data);
+        clearLabels(data);
+        final var repos = new ArrayList<String>();
+        final var numbers = new ArrayList<Integer>();
+        final var labels = new ArrayList<Long>();
+        for (final var pr : data) {
+            for (final var label : pr.labels()) {
+                repos.add(pr.repo());
+                numbers.add(pr.number());
+                labels.add(label);
+            }
+        }
+        if (!labels.isEmpty())
+            insertLabels(repos, numbers, labels);
     }
 
-    @SqlQuery("select * from pull_requests where thread = :thread")
+    @SqlQuery(SELECT_WITH_LABELS + " where p.thread = :thread")
     PRData getData(@Bind("thread") long threadId);
 
-    @SqlQuery("select * from pull_requests where lower(repo) = lower(:repo) and number = :number")
+    @SqlQuery(SELECT_WITH_LABELS + " where p.repo = :repo and p.number = :number")
     PRData getData(@Bind("repo") String repo, @Bind("number") int prNumber);
 
-    @SqlQuery("select * from pull_requests")
+    @SqlQuery(SELECT_WITH_LABELS)
     List<PRData> getAll();
 
-    record PRData(String repo, int number, long threadId, int comments, List<Long> labels,
-                  String title, String description, PRState state, int commits) {
+    @SqlQuery(SELECT_WITH_LABELS + " where exists (select 1 from pull_request_labels l where l.label = :label and l.repo = p.repo and l.number = p.number)")
+    List<PRData> getWithLabel(@Bind("label") long labelId);
+
+    /**
+     * The tracked data of a PR. The title and description are only stored as {@linkplain #hash(String) hashes},
+     * so that the size of the record and the cost of comparing it don't depend on their length.
+     */
+    record PRData(String repo, int number, long threadId, int comments, Set<Long> labels,
+                  long titleHash, long descriptionHash, PRState state, int commits) {
+        public PRData {
+            // Normalize the data so that PRs from GitHub compare equal to the ones in the database
+            repo = repo.toLowerCase(Locale.ROOT);
+            labels = Set.copyOf(labels);
+        }
+
+        /**
+         * Hashes the title or description of a PR. {@code null} hashes the same as an empty string.
+         *
+         * @param text the text to hash
+         * @return the hash
+         */
+        public static long hash(@Nullable String text) {
+            return Hashing.murmur3_128().hashString(text == null ? "" : text, StandardCharsets.UTF_8).asLong();
+        }
+
+        public int stateId() {
+            return state == null ? 0 : state.ordinal() + 1;
+        }
+
         public static class Mapper implements RowMapper<PRData> {
 
             @Override
@@ -64,22 +168,73 @@ public interface PullRequestsDAO extends Transactional<PullRequestsDAO> {
                 return new PRData(
                         rs.getString("repo"), rs.getInt("number"),
                         rs.getLong("thread"), rs.getInt("comments"),
-                        GSON.fromJson(or(rs.getString("labels"), "[]"), LONG_LIST_TYPE),
-                        rs.getString("title"), rs.getString("description"),
+                        parseLabels(rs.getString("labels")),
+                        rs.getLong("title_hash"), rs.getLong("description_hash"),
                         PRState.getState(rs.getInt("state")), rs.getInt("commits")
                 );
             }
+
+            private static Set<Long> parseLabels(@Nullable String labels) {
+                if (labels == null || labels.isEmpty())
+                    return Set.of();
+                final var set = new HashSet<Long>();
+                int start = 0;
+                int end;
+                while ((end = labels.indexOf(',', start)) != -1) {
+                    set.add(Long.parseLong(labels, start, end, 10));
+                    start = end + 1;
+                }
+                set.add(Long.parseLong(labels, start, labels.length(), 10));
+                return set;
+            }
         }
 
         public static PRData from(GHPullRequest pr, long threadId) {
             return new PRData(
                     GHAccessor.getOwner(pr).getFullName(), pr.getNumber(), threadId,
-                    pr.getCommentsCount(), pr.getLabels().stream().map(GHLabel::getId).toList(),
-                    pr.getTitle(), pr.getBody(), PRState.getState(pr), unwrap(GHAccessor.PR_COMMITS.get(pr))
+                    pr.getCommentsCount(), pr.getLabels().stream().map(GHLabel::getId).collect(Collectors.toSet()),
+                    hash(pr.getTitle()), hash(pr.getBody()), PRState.getState(pr), unwrap(GHAccessor.PR_COMMITS.get(pr))
             );
         }
     }
 
+    record PRText(@Nullable String title, @Nullable String description) {
+        public static PRText from(GHPullRequest pr) {
+            return new PRText(pr.getTitle(), pr.getBody());
+        }
+
+        public static class Mapper implements RowMapper<PRText> {
+            @Override
+            public PRText map(ResultSet rs, StatementContext ctx) throws SQLException {
+                return new PRText(rs.getString("title"), rs.getString("description"));
+            }
+        }
+    }
+
+    /**
+     * The last comment and commit of a PR which were sent to its thread.
+     *
+     * @param lastCommentId the ID of the last comment, or {@code null} if unknown
+     * @param lastCommentAt the creation time of the last comment, or {@code null} if unknown
+     * @param lastCommitSha the SHA of the last commit, or {@code null} if unknown
+     */
+    record PRCursor(@Nullable Long lastCommentId, @Nullable Instant lastCommentAt, @Nullable String lastCommitSha) {
+        public static final PRCursor EMPTY = new PRCursor(null, null, null);
+
+        public static class Mapper implements RowMapper<PRCursor> {
+            @Override
+            public PRCursor map(ResultSet rs, StatementContext ctx) throws SQLException {
+                final var commentId = rs.getLong("last_comment_id");
+                final var hasComment = !rs.wasNull();
+                final var commentAt = rs.getLong("last_comment_at");
+                return new PRCursor(
+                        hasComment ? commentId : null, hasComment ? Instant.ofEpochMilli(commentAt) : null,
+                        rs.getString("last_commit_sha")
+                );
+            }
+        }
+    }
+
     enum PRState {
         OPEN, CLOSED, DRAFT, MERGED;
 
@@ -91,14 +246,16 @@ public interface PullRequestsDAO extends Transactional<PullRequestsDAO> {
         }
 
         public static PRState getState(GHPullRequest request) {
-            if (convert(GHAccessor.PR_IS_MERGED.get(request)))
+            return getState(convert(GHAccessor.PR_IS_MERGED.get(request)), GHAccessor.isPRDraft(request), request.getState() == GHIssueState.CLOSED);
+        }
+
+        public static PRState getState(boolean merged, boolean draft, boolean closed) {
+            if (merged)
                 return PRState.MERGED;
-            else if (GHAccessor.isPRDraft(request) && request.getState() == GHIssueState.OPEN)
+            else if (draft && !closed)
                 return PRState.DRAFT;
-            else if (request.getState() == GHIssueState.CLOSED)
+            else if (closed)
                 return PRState.CLOSED;
-            else if (request.getState() == GHIssueState.OPEN)
-                return PRState.OPEN;
             return PRState.OPEN;
         }
 
@@ -110,8 +267,4 @@ public interface PullRequestsDAO extends Transactional<PullRequestsDAO> {
     private static int unwrap(@Nullable Integer integer) {
         return integer == null ? 0 : integer;
     }
-
-    private static String or(@Nullable String str, @Nonnull String or) {
-        return str == null ? or : str;
-    }
 }
@@ -0,0 +1,62 @@
+package io.github.themoddinginquisition.theinquisitor.db;
+
+import io.github.themoddinginquisition.theinquisitor.TheInquisitor;
+import org.jdbi.v3.core.statement.SqlLogger;
+import org.jdbi.v3.core.statement.StatementContext;
+
+import java.sql.SQLException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Logs statements which take longer than a threshold to execute. <br>
+ * The first time each distinct statement is executed, its query plan is also checked, and if it scans a whole table
+ * instead of using an index, that is logged too.
+ */
+public class SlowQueryLogger implements SqlLogger {
+    private final LongSupplier thresholdMillis;
+    private final Map<String, Boolean> checkedPlans = new ConcurrentHashMap<>();
+
+    /**
+     * @param thresholdMillis the amount of milliseconds after which a statement is considered slow
+     */
+    public SlowQueryLogger(LongSupplier thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    @Override
+    public void logAfterExecution(StatementContext context) {
+        final var elapsed = context.getElapsedTime(ChronoUnit.MILLIS);
+        if (elapsed >= thresholdMillis.getAsLong())
+            TheInquisitor.LOGGER.warn("Slow SQL statement took {} ms: {}", elapsed, context.getRenderedSql());
+
+        final var sql = context.getParsedSql().getSql();
+        if (checkedPlans.putIfAbsent(sql, true) == null)
+            checkPlan(context, sql);
+    }
+
+    private static void checkPlan(StatementContext context, String sql) {
+        final var start = sql.stripLeading().toLowerCase(Locale.ROOT);
+        if (!(start.startsWith("select") || start.startsWith("update") || start.startsWith("delete") || start.startsWith("insert")))
+            return;
+        // Parameters which aren't bound are treated as null, which doesn't affect the plan
+        try (final var statement = context.getConnection().prepareStatement("explain query plan " + sql);
+             final var plan = statement.executeQuery()) {
+            final var scans = new ArrayList<String>();
+            while (plan.next()) {
+                final var detail = plan.getString("detail");
+                // Index scans are reported as "SCAN <table> USING [COVERING] INDEX <index>"
+                if (detail.startsWith("SCAN ") && !detail.contains(" USING "))
+                    scans.add(detail);
+            }
+            if (!scans.isEmpty())
+                TheInquisitor.LOGGER.warn("SQL statement does a full table scan ({}): {}", String.join(", ", scans), sql);
+        } catch (SQLException e) {
+            TheInquisitor.LOGGER.debug("Could not explain the query plan of statement {}: ", sql, e);
+        }
+    }
+}
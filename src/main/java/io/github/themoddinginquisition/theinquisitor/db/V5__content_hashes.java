@@ -0,0 +1,57 @@
+package io.github.themoddinginquisition.theinquisitor.db;
+
+import com.google.common.hash.Hashing;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Moves the titles and descriptions of PRs out of {@code pull_requests} into {@code pull_request_texts},
+ * replacing them with content hashes. <br>
+ * The hashes need to be computed in Java, which is why this isn't an SQL migration. Only SQL migrations are scanned,
+ * so this is registered with Flyway explicitly.
+ */
+public class V5__content_hashes extends BaseJavaMigration {
+    @Override
+    public void migrate(Context context) throws Exception {
+        final var connection = context.getConnection();
+        try (final var statement = connection.createStatement()) {
+            statement.execute("""
+                    create table pull_request_texts
+                    (
+                        repo        text not null,
+                        number      unsigned big int not null,
+                        title       text,
+                        description text,
+                        constraint pk_pull_request_texts primary key (repo, number)
+                    )""");
+            statement.execute("insert or replace into pull_request_texts select repo, number, title, description from pull_requests");
+            statement.execute("alter table pull_requests add column title_hash big int not null default 0");
+            statement.execute("alter table pull_requests add column description_hash big int not null default 0");
+        }
+
+        try (final var select = connection.createStatement();
+             final var rows = select.executeQuery("select repo, number, title, description from pull_request_texts");
+             final var update = connection.prepareStatement("update pull_requests set title_hash = ?, description_hash = ? where repo = ? and number = ?")) {
+            while (rows.next()) {
+                update.setLong(1, hash(rows.getString("title")));
+                update.setLong(2, hash(rows.getString("description")));
+                update.setString(3, rows.getString("repo"));
+                update.setLong(4, rows.getLong("number"));
+                update.addBatch();
+            }
+            update.executeBatch();
+        }
+
+        try (final var statement = connection.createStatement()) {
+            statement.execute("alter table pull_requests drop column title");
+            statement.execute("alter table pull_requests drop column description");
+        }
+    }
+
+    // Must stay in sync with PullRequestsDAO.PRData#hash, but is copied so that this migration never changes
+    private static long hash(String text) {
+        return Hashing.murmur3_128().hashString(text == null ? "" : text, StandardCharsets.UTF_8).asLong();
+    }
+}
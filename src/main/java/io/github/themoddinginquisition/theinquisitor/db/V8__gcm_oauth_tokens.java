@@ -0,0 +1,60 @@
+package io.github.themoddinginquisition.theinquisitor.db;
+
+import io.github.themoddinginquisition.theinquisitor.TheInquisitor;
+import io.github.themoddinginquisition.theinquisitor.util.TokenEncryptor;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Re-encrypts the tokens in {@code github_oauth} which still use the legacy jasypt scheme with the {@link TokenEncryptor} scheme. <br>
+ * Like the other Java migrations, this is registered with Flyway explicitly, which lets it be given the encryption password. As the {@link TokenEncryptor} can still read legacy tokens, the bot doesn't depend on this migration
+ * converting every row, and rows are only updated if their token didn't change in the meantime.
+ */
+public class V8__gcm_oauth_tokens extends BaseJavaMigration {
+    private static final int BATCH_SIZE = 100;
+
+    private final TokenEncryptor encryptor;
+
+    public V8__gcm_oauth_tokens(TokenEncryptor encryptor) {
+        this.encryptor = encryptor;
+    }
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        final var connection = context.getConnection();
+        try (final var select = connection.prepareStatement("select discord_id, token from github_oauth where discord_id > ? and token not like '" + TokenEncryptor.PREFIX + "%' order by discord_id limit " + BATCH_SIZE);
+             final var update = connection.prepareStatement("update github_oauth set token = ? where discord_id = ? and token = ?")) {
+            long lastId = Long.MIN_VALUE;
+            while (true) {
+                final var tokens = new LinkedHashMap<Long, String>();
+                select.setLong(1, lastId);
+                try (final var rows = select.executeQuery()) {
+                    while (rows.next())
+                        tokens.put(rows.getLong("discord_id"), rows.getString("token"));
+                }
+                if (tokens.isEmpty())
+                    return;
+
+                for (final var entry : tokens.entrySet()) {
+                    final var userId = entry.getKey();
+                    lastId = userId;
+                    final String token;
+                    try {
+                        token = encryptor.decrypt(userId, entry.getValue());
+                    } catch (RuntimeException e) {
+                        // Leave the row in the legacy format rather than failing the whole migration
+                        TheInquisitor.LOGGER.warn("Could not decrypt the GitHub token of user {}, leaving it unmigrated: ", userId, e);
+                        continue;
+                    }
+                    update.setString(1, encryptor.encrypt(userId, token));
+                    update.setLong(2, userId);
+                    update.setString(3, entry.getValue());
+                    update.addBatch();
+                }
+                update.executeBatch();
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.themoddinginquisition.theinquisitor.db;
+
+import org.jdbi.v3.core.mapper.RowMapper;
+import org.jdbi.v3.core.statement.StatementContext;
+import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.jdbi.v3.sqlobject.transaction.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+@RegisterRowMapper(WebhookDeliveriesDAO.DeliveryIdMapper.class)
+public interface WebhookDeliveriesDAO extends Transactional<WebhookDeliveriesDAO> {
+
+    @SqlUpdate("insert or ignore into webhook_deliveries values (:msb, :lsb, :received)")
+    void insert(@Bind("msb") long mostSignificantBits, @Bind("lsb") long leastSignificantBits, @Bind("received") long received);
+
+    default void insert(UUID id, long received) {
+        insert(id.getMostSignificantBits(), id.getLeastSignificantBits(), received);
+    }
+
+    @SqlUpdate("delete from webhook_deliveries where id_msb = :msb and id_lsb = :lsb")
+    void remove(@Bind("msb") long mostSignificantBits, @Bind("lsb") long leastSignificantBits);
+
+    default void remove(UUID id) {
+        remove(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    @SqlQuery("select id_msb, id_lsb from webhook_deliveries where received >= :since")
+    List<UUID> getReceivedSince(@Bind("since") long since);
+
+    @SqlUpdate("delete from webhook_deliveries where received < :before")
+    int removeReceivedBefore(@Bind("before") long before);
+
+    class DeliveryIdMapper implements RowMapper<UUID> {
+        @Override
+        public UUID map(ResultSet rs, StatementContext ctx) throws SQLException {
+            return new UUID(rs.getLong("id_msb"), rs.getLong("id_lsb"));
+        }
+    }
+}
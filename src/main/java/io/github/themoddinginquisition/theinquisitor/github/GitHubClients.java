@@ -0,0 +1,64 @@
+package io.github.themoddinginquisition.theinquisitor.github;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import org.jetbrains.annotations.Nullable;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+import org.kohsuke.github.extras.okhttp3.OkHttpGitHubConnector;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Creates {@link GitHub} clients which all share a single HTTP client, and as such its connection pool and dispatcher. <br>
+ * This makes creating a client cheap, as opposed to clients built with their own connector.
+ */
+public class GitHubClients {
+    private final OkHttpClient http = new OkHttpClient.Builder().build();
+    private final HttpCacheMetrics botCacheMetrics = new HttpCacheMetrics();
+
+    /**
+     * Creates a client authenticated as the bot. <br>
+     * If a cache directory is given, responses are cached on disk. Cached responses are always revalidated using
+     * their {@code ETag}, so they are never stale, but unchanged resources don't count against the rate limit.
+     *
+     * @param token          the OAuth token of the bot
+     * @param cacheDirectory the directory of the response cache, or {@code null} to disable it
+     * @param cacheSize      the maximum size of the response cache, in bytes
+     * @return the client
+     */
+    public GitHub forBot(String token, @Nullable Path cacheDirectory, long cacheSize) throws IOException {
+        var client = http;
+        if (cacheDirectory != null && cacheSize > 0) {
+            client = http.newBuilder()
+                    .cache(new Cache(cacheDirectory.toFile(), cacheSize))
+                    .addInterceptor(botCacheMetrics)
+                    .build();
+        }
+        return new GitHubBuilder()
+                .withConnector(new OkHttpGitHubConnector(client))
+                .withOAuthToken(token)
+                .build();
+    }
+
+    /**
+     * @return the metrics of the response cache of the bot's client
+     */
+    public HttpCacheMetrics getBotCacheMetrics() {
+        return botCacheMetrics;
+    }
+
+    /**
+     * Creates a client authenticated as a user who linked their GitHub account.
+     *
+     * @param token the token the user was granted when linking their account
+     * @return the client
+     */
+    public GitHub forUser(String token) throws IOException {
+        return new GitHubBuilder()
+                .withConnector(new OkHttpGitHubConnector(http))
+                .withJwtToken(token)
+                .build();
+    }
+}
@@ -2,6 +2,7 @@ package io.github.themoddinginquisition.theinquisitor.github;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import io.github.themoddinginquisition.theinquisitor.TheInquisitor;
 import io.github.themoddinginquisition.theinquisitor.db.GithubOauthDAO;
 import io.github.themoddinginquisition.theinquisitor.util.Config;
@@ -10,39 +11,61 @@ import org.jetbrains.annotations.Nullable;
 import org.kohsuke.github.GHOrganization;
 import org.kohsuke.github.GHUser;
 import org.kohsuke.github.GitHub;
-import org.kohsuke.github.GitHubBuilder;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class GitHubUserCache {
     private final GHOrganization organization;
+    private final GitHubClients clients;
     private final Jdbi jdbi;
     private final Supplier<Config> config;
     private final Cache<Long, User> idToUser = Caffeine.newBuilder()
             .expireAfterWrite(1, TimeUnit.HOURS)
             .build();
+    // Decrypting tokens is expensive, so keep them around for longer than the users
+    private final Cache<Long, String> tokens = Caffeine.newBuilder()
+            .expireAfterAccess(12, TimeUnit.HOURS)
+            .maximumSize(1000)
+            .build();
+    private final Cache<Long, GitHub> userClients = Caffeine.newBuilder()
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .maximumSize(100)
+            .build();
+    // Users who haven't linked their accounts. Linking an account invalidates its entry
+    private final Cache<Long, Boolean> unlinked = Caffeine.newBuilder()
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .maximumSize(10_000)
+            .build();
+    // The IDs of the members of teams, by team name. Memberships are refreshed in the background, keeping the old ones in the meantime
+    private final LoadingCache<String, Set<Long>> teamMembers;
 
-    public GitHubUserCache(GitHub gitHub, Jdbi jdbi, Supplier<Config> config) throws IOException {
+    public GitHubUserCache(GitHub gitHub, GitHubClients clients, Jdbi jdbi, Supplier<Config> config) throws IOException {
         this.organization = gitHub.getOrganization(config.get().organization);
+        this.clients = clients;
         this.jdbi = jdbi;
         this.config = config;
+        this.teamMembers = Caffeine.newBuilder()
+                .refreshAfterWrite(config.get().teamRefreshInterval, TimeUnit.MINUTES)
+                .build(this::fetchTeamMembers);
+        // Warm up the janitors, so that the first command doesn't need to wait for them
+        teamMembers.refresh(config.get().janitorsTeam);
     }
 
     @Nullable
     public User getUser(long id) {
         var user = idToUser.getIfPresent(id);
         if (user == null) {
-            final var token = jdbi.withExtension(GithubOauthDAO.class, db -> db.getToken(id));
-            if (token == null)
+            final var client = getClient(id);
+            if (client == null) {
                 return null;
-            else {
+            } else {
                 try {
-                    final var myself = new GitHubBuilder()
-                            .withJwtToken(token)
-                            .build()
-                            .getMyself();
+                    final var myself = client.getMyself();
                     user = new User(myself.getName(), myself.getLogin(), myself.getAvatarUrl(), myself);
                     idToUser.put(id, user);
                 } catch (IOException e) {
@@ -53,17 +76,85 @@ public class GitHubUserCache {
         return user;
     }
 
+    /**
+     * Gets a client authenticated as the linked GitHub account of a user. <br>
+     * Clients are cached, and share their HTTP client with all the other clients.
+     *
+     * @param id the ID of the user
+     * @return the client, or {@code null} if the user hasn't linked their account
+     */
+    @Nullable
+    public GitHub getClient(long id) {
+        var client = userClients.getIfPresent(id);
+        if (client == null) {
+            final var token = getToken(id);
+            if (token == null)
+                return null;
+            try {
+                client = clients.forUser(token);
+                userClients.put(id, client);
+            } catch (IOException e) {
+                TheInquisitor.LOGGER.error("Exception trying to create GitHub client for user with ID {}: ", id, e);
+            }
+        }
+        return client;
+    }
+
+    @Nullable
+    private String getToken(long id) {
+        var token = tokens.getIfPresent(id);
+        if (token == null) {
+            if (unlinked.getIfPresent(id) != null)
+                return null;
+            token = jdbi.withExtension(GithubOauthDAO.class, db -> db.getToken(id));
+            if (token == null) {
+                unlinked.put(id, true);
+                return null;
+            }
+            tokens.put(id, token);
+        }
+        return token;
+    }
+
+    /**
+     * Forgets the linked account of a user, following them linking a new one.
+     *
+     * @param id the ID of the user
+     */
+    public void invalidate(long id) {
+        idToUser.invalidate(id);
+        unlinked.invalidate(id);
+        tokens.invalidate(id);
+        userClients.invalidate(id);
+    }
+
     public boolean isJanitor(long userId) {
+        final var user = getUser(userId);
+        if (user == null)
+            return false;
         try {
-            final var team = organization.getTeamByName(config.get().janitorsTeam);
-            final var user = getUser(userId);
-            if (user != null && team != null)
-                return team.hasMember(user.user());
-        } catch (IOException e) {
-            TheInquisitor.LOGGER.error("Exception trying to determine if {} is a janitor: ", userId, e);
+            return teamMembers.get(config.get().janitorsTeam).contains(user.user().getId());
+        } catch (UncheckedIOException e) {
+            TheInquisitor.LOGGER.error("Exception trying to determine if {} is a janitor: ", userId, e.getCause());
         }
         return false;
     }
 
+    private Set<Long> fetchTeamMembers(String teamName) {
+        try {
+            final var team = organization.getTeamByName(teamName);
+            if (team == null)
+                return Set.of();
+            return team.listMembers()
+                    .withPageSize(100)
+                    .toList()
+                    .stream()
+                    .map(GHUser::getId)
+                    .collect(Collectors.toUnmodifiableSet());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     public record User(String name, String login, String avatarUrl, GHUser user) {}
 }
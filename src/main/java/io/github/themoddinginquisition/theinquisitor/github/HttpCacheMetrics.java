@@ -0,0 +1,49 @@
+package io.github.themoddinginquisition.theinquisitor.github;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how the requests of a client with an HTTP response cache are served. This must be added as an application interceptor. <br>
+ * Requests are either served from the cache without reaching the network ({@linkplain #getHits() hits}), by revalidating the
+ * cached response with a {@code 304 Not Modified} response, which doesn't count against GitHub's rate limit
+ * ({@linkplain #getConditionalHits() conditional hits}), or by a full network response ({@linkplain #getMisses() misses}).
+ */
+public class HttpCacheMetrics implements Interceptor {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder conditionalHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        final var response = chain.proceed(chain.request());
+        final var network = response.networkResponse();
+        if (network == null) {
+            hits.increment();
+        } else if (network.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            // This includes requests which were already conditional, such as those of the PullRequestPoller
+            conditionalHits.increment();
+        } else {
+            misses.increment();
+        }
+        return response;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getConditionalHits() {
+        return conditionalHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.themoddinginquisition.theinquisitor.github;
+
+import org.jetbrains.annotations.Nullable;
+import org.kohsuke.github.GHAccessor;
+import org.kohsuke.github.GHLabel;
+import org.kohsuke.github.GitHub;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of the labels of repositories, mapping label IDs to names and back. <br>
+ * Catalogs are revalidated with a conditional request once they are older than the {@linkplain #TTL TTL}, or when
+ * an unknown label ID is looked up. Unknown label names are fetched individually and added to the catalog. <br>
+ * Catalogs should be {@linkplain #invalidate(String) invalidated} when GitHub notifies us that the labels of a repository changed.
+ */
+public class LabelCatalog {
+    public static final Duration TTL = Duration.ofMinutes(30);
+
+    private final GitHub gitHub;
+    private final Map<String, Catalog> catalogs = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+
+    public LabelCatalog(GitHub gitHub) {
+        this.gitHub = gitHub;
+    }
+
+    /**
+     * Gets the name of a label.
+     *
+     * @param repo the full name of the repository of the label
+     * @param id   the ID of the label
+     * @return the name of the label, or {@code null} if the label doesn't exist anymore
+     * @throws IOException if an exception occurs fetching the labels of the repository
+     */
+    @Nullable
+    public String getName(String repo, long id) throws IOException {
+        var catalog = catalogs.get(key(repo));
+        // The label may have been created since we last fetched the labels
+        if (catalog == null || catalog.isStale() || !catalog.names().containsKey(id))
+            catalog = refresh(repo, catalog);
+        return catalog.names().get(id);
+    }
+
+    /**
+     * Gets the ID of a label.
+     *
+     * @param repo the full name of the repository of the label
+     * @param name the name of the label
+     * @return the ID of the label
+     * @throws IOException if the label doesn't exist, or an exception occurs fetching it
+     */
+    public long getId(String repo, String name) throws IOException {
+        var catalog = catalogs.get(key(repo));
+        if (catalog == null || catalog.isStale())
+            catalog = refresh(repo, catalog);
+        final var id = catalog.ids().get(name);
+        if (id != null)
+            return id;
+
+        // Only fetch the missing label instead of the whole catalog
+        final GHLabel label;
+        try {
+            label = GHAccessor.getLabel(gitHub, repo, name);
+        } finally {
+            requests.increment();
+        }
+        catalogs.computeIfPresent(key(repo), (k, old) -> old.with(label));
+        return label.getId();
+    }
+
+    /**
+     * Forgets the known labels of a repository.
+     *
+     * @param repo the full name of the repository
+     */
+    public void invalidate(String repo) {
+        catalogs.remove(key(repo));
+    }
+
+    /**
+     * @return the amount of requests made by this catalog
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return the amount of requests which were answered with {@code 304 Not Modified}
+     */
+    public long getNotModifiedCount() {
+        return notModified.sum();
+    }
+
+    private Catalog refresh(String repo, @Nullable Catalog old) throws IOException {
+        final var response = GHAccessor.listLabelsConditionally(gitHub, repo, old == null ? null : old.etag());
+        requests.increment();
+        final Catalog catalog;
+        if (old != null && response.notModified()) {
+            notModified.increment();
+            catalog = old.revalidated();
+        } else {
+            catalog = Catalog.of(Objects.requireNonNullElse(response.body(), List.of()), response.etag());
+        }
+        catalogs.put(key(repo), catalog);
+        return catalog;
+    }
+
+    private static String key(String repo) {
+        return repo.toLowerCase(Locale.ROOT);
+    }
+
+    private record Catalog(Map<Long, String> names, Map<String, Long> ids, @Nullable String etag, long fetchedAt) {
+        static Catalog of(List<GHLabel> labels, @Nullable String etag) {
+            final var names = new HashMap<Long, String>();
+            final var ids = new HashMap<String, Long>();
+            for (final var label : labels) {
+                names.put(label.getId(), label.getName());
+                ids.putIfAbsent(label.getName(), label.getId());
+            }
+            return new Catalog(Map.copyOf(names), Map.copyOf(ids), etag, System.currentTimeMillis());
+        }
+
+        boolean isStale() {
+            return System.currentTimeMillis() - fetchedAt > TTL.toMillis();
+        }
+
+        Catalog revalidated() {
+            return new Catalog(names, ids, etag, System.currentTimeMillis());
+        }
+
+        Catalog with(GHLabel label) {
+            final var names = new HashMap<>(this.names);
+            final var ids = new HashMap<>(this.ids);
+            names.put(label.getId(), label.getName());
+            ids.put(label.getName(), label.getId());
+            // The catalog changed without its ETag, so it must be fetched in full next time
+            return new Catalog(Map.copyOf(names), Map.copyOf(ids), null, fetchedAt);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.themoddinginquisition.theinquisitor.github;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.jetbrains.annotations.Nullable;
+import org.kohsuke.github.GHAccessor;
+import org.kohsuke.github.GHPullRequest;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Polls pull requests using conditional requests. <br>
+ * The {@code ETag} and {@code Last-Modified} validators of each pull request are remembered,
+ * so that GitHub can reply with {@code 304 Not Modified} to unchanged pull requests, which does not count against the rate limit.
+ */
+public class PullRequestPoller {
+    private final GitHub gitHub;
+    private final Map<Key, Validators> validators = new ConcurrentHashMap<>();
+    private final Cache<String, GHRepository> repositories = Caffeine.newBuilder()
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+
+    public PullRequestPoller(GitHub gitHub) {
+        this.gitHub = gitHub;
+    }
+
+    /**
+     * Polls a pull request.
+     *
+     * @param repo   the full name of the repository of the pull request
+     * @param number the number of the pull request
+     * @return the pull request, or {@code null} if it was not modified since the last time it was polled
+     * @throws IOException if an exception occurs fetching the pull request
+     */
+    @Nullable
+    public GHPullRequest poll(String repo, int number) throws IOException {
+        final var key = new Key(repo, number);
+        return fetch(key, validators.get(key));
+    }
+
+    /**
+     * Fetches a pull request unconditionally, updating its known validators.
+     *
+     * @param repo   the full name of the repository of the pull request
+     * @param number the number of the pull request
+     * @return the pull request
+     * @throws IOException if an exception occurs fetching the pull request
+     */
+    public GHPullRequest fetch(String repo, int number) throws IOException {
+        return Objects.requireNonNull(fetch(new Key(repo, number), null));
+    }
+
+    @Nullable
+    private GHPullRequest fetch(Key key, @Nullable Validators old) throws IOException {
+        final var response = GHAccessor.getPullRequestConditionally(gitHub, getRepository(key.repo()), key.number(),
+                old == null ? null : old.etag(), old == null ? null : old.lastModified());
+        requests.increment();
+        if (response.notModified()) {
+            notModified.increment();
+            return null;
+        }
+        validators.put(key, new Validators(response.etag(), response.lastModified()));
+        return response.body();
+    }
+
+    /**
+     * Forgets the validators of a pull request, so that the next poll will fetch it unconditionally.
+     *
+     * @param repo   the full name of the repository of the pull request
+     * @param number the number of the pull request
+     */
+    public void invalidate(String repo, int number) {
+        validators.remove(new Key(repo, number));
+    }
+
+    /**
+     * @return the amount of requests made by this poller
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return the amount of requests which were answered with {@code 304 Not Modified}
+     */
+    public long getNotModifiedCount() {
+        return notModified.sum();
+    }
+
+    private GHRepository getRepository(String repo) throws IOException {
+        try {
+            return repositories.get(repo, name -> {
+                try {
+                    return gitHub.getRepository(name);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private record Key(String repo, int number) {
+        private Key {
+            repo = repo.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private record Validators(@Nullable String etag, @Nullable String lastModified) {}
+}
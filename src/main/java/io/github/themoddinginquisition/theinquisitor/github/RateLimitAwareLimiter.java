@@ -0,0 +1,66 @@
+package io.github.themoddinginquisition.theinquisitor.github;
+
+import org.kohsuke.github.GitHub;
+
+import java.time.Instant;
+import java.util.function.IntSupplier;
+
+/**
+ * Limits the amount of concurrent GitHub requests based on the last known rate limit of a client. <br>
+ * The concurrency scales down linearly with the remaining requests, until only the {@code reserve} is left,
+ * at which point {@link #hasBudget()} will return {@code false} until the rate limit resets.
+ */
+public class RateLimitAwareLimiter {
+    private final GitHub gitHub;
+    private final IntSupplier maxConcurrency;
+    private final IntSupplier reserve;
+    private int inFlight;
+
+    public RateLimitAwareLimiter(GitHub gitHub, IntSupplier maxConcurrency, IntSupplier reserve) {
+        this.gitHub = gitHub;
+        this.maxConcurrency = maxConcurrency;
+        this.reserve = reserve;
+    }
+
+    /**
+     * Waits until a new request may be started.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= getConcurrency()) {
+            // The rate limit may change without any request finishing, so don't wait indefinitely
+            wait(100L);
+        }
+        inFlight++;
+    }
+
+    /**
+     * Marks a request started using {@link #acquire()} as finished.
+     */
+    public synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * @return if there are more requests remaining than the reserve, or if the rate limit has reset since it was last checked
+     */
+    public boolean hasBudget() {
+        final var core = gitHub.lastRateLimit().getCore();
+        return core.getRemaining() > reserve.getAsInt() || Instant.now().getEpochSecond() >= core.getResetEpochSeconds();
+    }
+
+    /**
+     * @return the amount of requests that may currently run concurrently
+     */
+    public int getConcurrency() {
+        final var max = Math.max(1, maxConcurrency.getAsInt());
+        final var core = gitHub.lastRateLimit().getCore();
+        final var reserve = this.reserve.getAsInt();
+        if (core.getLimit() <= reserve || Instant.now().getEpochSecond() >= core.getResetEpochSeconds())
+            return max;
+        final var fraction = (double) (core.getRemaining() - reserve) / (core.getLimit() - reserve);
+        return Math.max(1, Math.min(max, (int) Math.ceil(max * fraction)));
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.themoddinginquisition.theinquisitor.github.webhook;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.themoddinginquisition.theinquisitor.TheInquisitor;
+import io.github.themoddinginquisition.theinquisitor.db.WebhookDeliveriesDAO;
+import org.jdbi.v3.core.Jdbi;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Keeps track of the IDs of recently received webhook deliveries, so that redeliveries of the same event are only handled once. <br>
+ * If a {@link Jdbi} instance is provided, the IDs are also persisted, so that they survive restarts.
+ */
+public class DeliveryDeduplicator {
+    private final Duration ttl;
+    private final @Nullable Jdbi jdbi;
+    private final Cache<UUID, Boolean> received;
+
+    public DeliveryDeduplicator(Duration ttl, long maximumSize, @Nullable Jdbi jdbi) {
+        this.ttl = ttl;
+        this.jdbi = jdbi;
+        this.received = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maximumSize)
+                .build();
+
+        if (jdbi != null) {
+            final var since = Instant.now().minus(ttl).toEpochMilli();
+            jdbi.useExtension(WebhookDeliveriesDAO.class, db -> db.getReceivedSince(since).forEach(id -> received.put(id, true)));
+        }
+    }
+
+    /**
+     * Marks a delivery as received.
+     *
+     * @param id the ID of the delivery
+     * @return {@code true} if the delivery wasn't received before, or {@code false} if it's a duplicate
+     */
+    public boolean markReceived(UUID id) {
+        if (received.asMap().putIfAbsent(id, true) != null)
+            return false;
+        if (jdbi != null) {
+            try {
+                final var now = Instant.now().toEpochMilli();
+                jdbi.useExtension(WebhookDeliveriesDAO.class, db -> db.insert(id, now));
+            } catch (Exception e) {
+                TheInquisitor.LOGGER.warn("Exception trying to persist webhook delivery {}: ", id, e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forgets a delivery, so that it can be handled if it is delivered again. <br>
+     * This should be called when handling a delivery fails.
+     *
+     * @param id the ID of the delivery
+     */
+    public void forget(UUID id) {
+        received.invalidate(id);
+        if (jdbi != null) {
+            try {
+                jdbi.useExtension(WebhookDeliveriesDAO.class, db -> db.remove(id));
+            } catch (Exception e) {
+                TheInquisitor.LOGGER.warn("Exception trying to forget webhook delivery {}: ", id, e);
+            }
+        }
+    }
+
+    /**
+     * Removes the persisted deliveries which are older than the TTL.
+     */
+    public void cleanUp() {
+        received.cleanUp();
+        if (jdbi != null) {
+            final var before = Instant.now().minus(ttl).toEpochMilli();
+            jdbi.useExtension(WebhookDeliveriesDAO.class, db -> db.removeReceivedBefore(before));
+        }
+    }
+}
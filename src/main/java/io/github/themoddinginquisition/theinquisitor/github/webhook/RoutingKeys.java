@@ -0,0 +1,83 @@
+package io.github.themoddinginquisition.theinquisitor.github.webhook;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * The keys of a webhook payload used for determining which handlers are interested in it. <br>
+ * Extracting these keys with a streaming parser is a lot cheaper than binding the whole payload, which
+ * only needs to happen if a handler {@linkplain io.github.themoddinginquisition.theinquisitor.github.webhook.handler.WebhookEventHandler#accepts(RoutingKeys) accepts} the event.
+ *
+ * @param action     the {@code action} of the event, if any
+ * @param ref        the {@code ref} of a push event
+ * @param repository the full name of the repository of the event
+ * @param number     the number of the issue or pull request of the event, or {@code -1} if not applicable
+ */
+public record RoutingKeys(@Nullable String action, @Nullable String ref, @Nullable String repository, int number) {
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    /**
+     * Extracts the routing keys of a payload.
+     *
+     * @param payload the payload
+     * @param offset  the offset of the payload in the array
+     * @param length  the length of the payload
+     * @return the routing keys
+     * @throws IOException if the payload is malformed
+     */
+    public static RoutingKeys parse(byte[] payload, int offset, int length) throws IOException {
+        String action = null, ref = null, repository = null;
+        int number = -1;
+        try (final var parser = FACTORY.createParser(payload, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw new IOException("Webhook payload is not an object");
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final var field = parser.getCurrentName();
+                final var value = parser.nextToken();
+                if (value.isScalarValue()) {
+                    switch (field) {
+                        case "action" -> action = parser.getValueAsString();
+                        case "ref" -> ref = parser.getValueAsString();
+                        case "number" -> number = parser.getValueAsInt(-1);
+                    }
+                } else {
+                    switch (field) {
+                        case "repository" -> repository = findField(parser, value, "full_name");
+                        case "issue", "pull_request" -> {
+                            final var nested = findField(parser, value, "number");
+                            if (number == -1 && nested != null)
+                                number = Integer.parseInt(nested);
+                        }
+                        default -> parser.skipChildren();
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed issue number in webhook payload", e);
+        }
+        return new RoutingKeys(action, ref, repository, number);
+    }
+
+    @Nullable
+    private static String findField(JsonParser parser, JsonToken current, String name) throws IOException {
+        if (current != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String found = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final var field = parser.getCurrentName();
+            final var value = parser.nextToken();
+            if (found == null && value.isScalarValue() && field.equals(name)) {
+                found = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return found;
+    }
+}
@@ -4,8 +4,10 @@ import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import io.github.themoddinginquisition.theinquisitor.TheInquisitor;
 import io.github.themoddinginquisition.theinquisitor.github.webhook.event.WebhookEventType;
 import io.github.themoddinginquisition.theinquisitor.github.webhook.handler.WebhookEventHandler;
+import io.github.themoddinginquisition.theinquisitor.util.io.BodyBuffer;
 import io.github.themoddinginquisition.theinquisitor.util.io.MacInputStream;
 import io.github.themoddinginquisition.theinquisitor.util.io.RequestMethodFilter;
 import io.github.themoddinginquisition.theinquisitor.util.io.RequiredHeadersFilter;
@@ -21,20 +23,44 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 public class WebhookHttpHandler implements HttpHandler {
     public static final String GITHUB_DELIVERY_GUID_HEADER = "X-GitHub-Delivery";
     public static final String GITHUB_EVENT_HEADER = "X-GitHub-Event";
     public static final String GITHUB_SIGNATURE_HEADER = "X-Hub-Signature-256";
+    // GitHub caps webhook payloads at 25 MB
+    public static final int MAX_PAYLOAD_SIZE = 25 * 1024 * 1024;
 
     private final byte @Nullable [] secretToken;
+    private final @Nullable Mac macPrototype;
     private final MultiValuedMap<WebhookEventType<?>, WebhookEventHandler<?>> eventHandlers = new HashSetValuedHashMap<>();
 
+    @Nullable
+    private DeliveryDeduplicator deduplicator;
+    @Nullable
+    private ThreadPoolExecutor asyncExecutor;
+    private int queueCapacity;
+    private Backpressure backpressure = Backpressure.REJECT;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
     public WebhookHttpHandler(byte @Nullable [] secretToken) {
         this.secretToken = secretToken;
+        this.macPrototype = createMacPrototype(secretToken);
     }
 
     public WebhookHttpHandler() {
@@ -49,6 +75,48 @@ public class WebhookHttpHandler implements HttpHandler {
         return this;
     }
 
+    /**
+     * Makes this handler ignore deliveries which have already been received, acknowledging them without running any handlers.
+     *
+     * @param deduplicator the deduplicator keeping track of received deliveries
+     * @return this handler
+     */
+    @CanIgnoreReturnValue
+    public WebhookHttpHandler deduplicate(DeliveryDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+        return this;
+    }
+
+    /**
+     * Makes this handler process events asynchronously. <br>
+     * Once its signature is validated, each event is queued and immediately acknowledged with a {@code 202 Accepted} response,
+     * and its handlers are run by a worker pool. As such, the responses of the handlers are ignored.
+     *
+     * @param workers       the amount of workers processing the queued events
+     * @param queueCapacity the maximum amount of events waiting to be processed
+     * @param backpressure  what to do with events received when the queue is full
+     * @param threadFactory the factory used to create the worker threads
+     * @return this handler
+     */
+    @CanIgnoreReturnValue
+    public WebhookHttpHandler async(int workers, int queueCapacity, Backpressure backpressure, ThreadFactory threadFactory) {
+        if (asyncExecutor != null)
+            asyncExecutor.shutdown();
+        this.queueCapacity = queueCapacity;
+        this.backpressure = backpressure;
+        this.asyncExecutor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        return this;
+    }
+
+    /**
+     * @return the metrics of the asynchronous event queue
+     */
+    public QueueMetrics getQueueMetrics() {
+        return new QueueMetrics(asyncExecutor == null ? 0 : asyncExecutor.getQueue().size(), queueCapacity,
+                accepted.sum(), rejected.sum(), processed.sum(), failed.sum());
+    }
+
     public <T> WebhookHttpHandler addHandler(WebhookEventType<T> type, WebhookEventHandler<T> handler) {
         eventHandlers.put(type, handler);
         return this;
@@ -66,7 +134,35 @@ public class WebhookHttpHandler implements HttpHandler {
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        if (!validateSignatures(exchange)) {
+        try (final var body = BodyBuffer.acquire()) {
+            handle(exchange, body);
+        }
+    }
+
+    private void handle(HttpExchange exchange, BodyBuffer body) throws IOException {
+        // Read the body once, computing its MAC as it's read
+        final @Nullable Mac mac = newMac();
+        try (final var is = mac == null ? exchange.getRequestBody() : new MacInputStream(mac, exchange.getRequestBody())) {
+            final var contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+            if (contentLength != null && Long.parseLong(contentLength.trim()) > MAX_PAYLOAD_SIZE)
+                throw new BodyBuffer.TooLargeException(MAX_PAYLOAD_SIZE);
+            body.readFrom(is, MAX_PAYLOAD_SIZE);
+        } catch (NumberFormatException e) {
+            final var response = "Malformed Content-Length request header.\n";
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_BAD_REQUEST, response.length());
+            try (final var output = exchange.getResponseBody()) {
+                output.write(response.getBytes(StandardCharsets.UTF_8));
+            }
+            return;
+        } catch (BodyBuffer.TooLargeException e) {
+            final var response = "Payload is larger than " + MAX_PAYLOAD_SIZE + " bytes.\n";
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_ENTITY_TOO_LARGE, response.length());
+            try (final var output = exchange.getResponseBody()) {
+                output.write(response.getBytes(StandardCharsets.UTF_8));
+            }
+            return;
+        }
+        if (mac != null && !compareSignatures(mac, exchange.getRequestHeaders().getFirst(GITHUB_SIGNATURE_HEADER))) {
             try (final var os = exchange.getResponseBody()) {
                 final String message = "Request signature is not present, or invalid!\n";
                 exchange.sendResponseHeaders(HttpURLConnection.HTTP_FORBIDDEN, message.length());
@@ -114,12 +210,47 @@ public class WebhookHttpHandler implements HttpHandler {
             }
             return;
         }
-        try (final var is = exchange.getRequestBody(); final var os = exchange.getResponseBody();) {
-            final var payload = GitHub.getMappingObjectReader().readValue(is, eventType.getEventClass());
-            if (is.available() > 0) {
-                System.err.println("Bytes remaining after reading event payload: " + is.available());
-                is.transferTo(OutputStream.nullOutputStream());
+
+        // Only bind the payload if a handler is interested in it
+        final RoutingKeys keys;
+        try {
+            keys = RoutingKeys.parse(body.array(), 0, body.size());
+        } catch (IOException e) {
+            final var response = "Malformed payload: " + e.getMessage() + "\n";
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_BAD_REQUEST, response.length());
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(response.getBytes(StandardCharsets.UTF_8));
             }
+            return;
+        }
+        final List<WebhookEventHandler<?>> interestedHandlers = handlers.stream()
+                .filter(handler -> handler.accepts(keys))
+                .toList();
+        if (interestedHandlers.isEmpty()) {
+            final var response = "Note: the event was not handled, but it was accepted\n";
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_ACCEPTED, response.length());
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(response.getBytes(StandardCharsets.UTF_8));
+            }
+            return;
+        }
+
+        if (deduplicator != null && !deduplicator.markReceived(deliveryID)) {
+            final var response = "Delivery " + deliveryID + " was already received.\n";
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length());
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(response.getBytes(StandardCharsets.UTF_8));
+            }
+            return;
+        }
+
+        if (asyncExecutor != null) {
+            // The pooled buffer is reused once we respond, so the queued delivery needs its own copy
+            enqueue(exchange, new Delivery(deliveryID, eventType, interestedHandlers, body.toByteArray()));
+            return;
+        }
+
+        try (final var os = exchange.getResponseBody()) {
             final AtomicBoolean isHandled = new AtomicBoolean();
             final WebhookEventHandler.Context output = new WebhookEventHandler.Context() {
                 @Override
@@ -133,10 +264,14 @@ public class WebhookHttpHandler implements HttpHandler {
                     isHandled.set(true);
                 }
             };
-            for (final var handler : handlers) {
-                doHandle(deliveryID, handler, output, payload);
-                if (isHandled.get())
-                    break;
+            try {
+                final var payload = GitHub.getMappingObjectReader().forType(eventType.getEventClass()).readValue(body.array(), 0, body.size());
+                dispatch(deliveryID, interestedHandlers, output, isHandled, payload);
+            } catch (IOException | RuntimeException e) {
+                // Allow the delivery to be handled if it is redelivered
+                if (deduplicator != null)
+                    deduplicator.forget(deliveryID);
+                throw e;
             }
             if (!isHandled.get()) {
                 output.respond(HttpURLConnection.HTTP_ACCEPTED, "Note: the event was not handled, but it was accepted\n");
@@ -144,6 +279,70 @@ public class WebhookHttpHandler implements HttpHandler {
         }
     }
 
+    private void enqueue(HttpExchange exchange, Delivery delivery) throws IOException {
+        try {
+            //noinspection ConstantConditions
+            asyncExecutor.execute(() -> process(delivery));
+        } catch (RejectedExecutionException e) {
+            // Deliveries processed on the endpoint thread are still accepted, so they are only counted as such
+            if (backpressure == Backpressure.CALLER_RUNS) {
+                TheInquisitor.LOGGER.warn("Webhook queue is full; processing delivery {} on the endpoint thread", delivery.id());
+                process(delivery);
+            } else {
+                TheInquisitor.LOGGER.warn("Webhook queue is full; rejecting delivery {}", delivery.id());
+                rejected.increment();
+                if (deduplicator != null)
+                    deduplicator.forget(delivery.id());
+                final var response = "Too many events are waiting to be processed.\n";
+                exchange.getResponseHeaders().add("Retry-After", "10");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, response.length());
+                try (final var output = exchange.getResponseBody()) {
+                    output.write(response.getBytes(StandardCharsets.UTF_8));
+                }
+                return;
+            }
+        }
+        accepted.increment();
+        final var response = "Accepted for processing.\n";
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_ACCEPTED, response.length());
+        try (final var output = exchange.getResponseBody()) {
+            output.write(response.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void process(Delivery delivery) {
+        try {
+            final var payload = GitHub.getMappingObjectReader().readValue(delivery.body(), delivery.type().getEventClass());
+            final AtomicBoolean isHandled = new AtomicBoolean();
+            // We've already responded to the request, so responses are dropped
+            final WebhookEventHandler.Context context = new WebhookEventHandler.Context() {
+                @Override
+                public void respond(int statusCode, String message) {
+                }
+
+                @Override
+                public void setHandled(boolean handled) {
+                    isHandled.set(true);
+                }
+            };
+            dispatch(delivery.id(), delivery.handlers(), context, isHandled, payload);
+            processed.increment();
+        } catch (Exception e) {
+            failed.increment();
+            if (deduplicator != null)
+                deduplicator.forget(delivery.id());
+            TheInquisitor.LOGGER.error("Exception handling webhook delivery {} of type {}: ", delivery.id(), delivery.type(), e);
+        }
+    }
+
+    private void dispatch(UUID deliveryID, Collection<WebhookEventHandler<?>> handlers, WebhookEventHandler.Context context, AtomicBoolean isHandled, Object payload) throws IOException {
+        for (final var handler : handlers) {
+            doHandle(deliveryID, handler, context, payload);
+            if (isHandled.get())
+                break;
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private <T> void doHandle(UUID deliveryID, WebhookEventHandler<T> handler, WebhookEventHandler.Context output, Object payload) throws IOException {
         handler.handleEvent(deliveryID, output, (T) payload);
@@ -151,27 +350,59 @@ public class WebhookHttpHandler implements HttpHandler {
 
     private static final String HMAC_SHA256 = "HmacSHA256";
 
-    private boolean validateSignatures(HttpExchange exchange) throws IOException {
-        if (secretToken != null) { // Validate signatures
-            Mac mac;
+    @Nullable
+    private static Mac createMacPrototype(byte @Nullable [] secretToken) {
+        if (secretToken == null)
+            return null;
+        try {
+            final var mac = Mac.getInstance(HMAC_SHA256);
+            mac.init(new SecretKeySpec(secretToken, HMAC_SHA256));
+            return mac;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to create mac for SHA-256; should be impossible as it's JDK-mandated to exist", e);
+        } catch (InvalidKeyException e) {
+            throw new IllegalStateException("Failed to initialize mac with key; should be impossible as they both are for SHA-256", e);
+        }
+    }
+
+    @Nullable
+    private Mac newMac() throws IOException {
+        if (macPrototype == null)
+            return null;
+        try {
+            // Cloning an initialized mac is a lot cheaper than looking up and initializing a new one
+            return (Mac) macPrototype.clone();
+        } catch (CloneNotSupportedException e) {
             try {
-                mac = Mac.getInstance(HMAC_SHA256);
+                final var mac = Mac.getInstance(HMAC_SHA256);
                 mac.init(new SecretKeySpec(secretToken, HMAC_SHA256));
-            } catch (NoSuchAlgorithmException e) {
-                throw new IOException("Failed to create mac for SHA-256; should be impossible as it's JDK-mandated to exist", e);
-            } catch (InvalidKeyException e) {
-                throw new IOException("Failed to initialize mac with key; should be impossible as they both are for SHA-256", e);
+                return mac;
+            } catch (NoSuchAlgorithmException | InvalidKeyException ex) {
+                throw new IOException("Failed to create mac", ex);
             }
-
-            final String ghSignature = exchange.getRequestHeaders().getFirst(GITHUB_SIGNATURE_HEADER);
-            return compareSignatures(new MacInputStream(mac, exchange.getRequestBody()), ghSignature);
         }
-        return true;
     }
 
-    private boolean compareSignatures(MacInputStream inputStream, String expected) throws IOException {
-        String actual = "sha256=" + MacInputStream.bytesToHex(inputStream.getMac().doFinal());
-        return actual.equals(expected);
+    private static boolean compareSignatures(Mac mac, @Nullable String expected) {
+        if (expected == null)
+            return false;
+        final var actual = "sha256=" + MacInputStream.bytesToHex(mac.doFinal());
+        return MessageDigest.isEqual(actual.getBytes(StandardCharsets.US_ASCII), expected.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private record Delivery(UUID id, WebhookEventType<?> type, List<WebhookEventHandler<?>> handlers, byte[] body) {}
+
+    public record QueueMetrics(int depth, int capacity, long accepted, long rejected, long processed, long failed) {}
+
+    public enum Backpressure {
+        /**
+         * Reject events with a {@code 503 Service Unavailable} response. They can then be redelivered from the webhook settings.
+         */
+        REJECT,
+        /**
+         * Process events on the endpoint thread, delaying the response.
+         */
+        CALLER_RUNS
     }
 
 }
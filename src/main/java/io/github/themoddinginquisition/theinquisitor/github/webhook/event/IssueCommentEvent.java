@@ -0,0 +1,15 @@
+package io.github.themoddinginquisition.theinquisitor.github.webhook.event;
+
+import org.jetbrains.annotations.Nullable;
+import org.kohsuke.github.GHAppInstallation;
+import org.kohsuke.github.GHIssue;
+import org.kohsuke.github.GHIssueComment;
+import org.kohsuke.github.GHOrganization;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GHUser;
+
+// https://docs.github.com/en/developers/webhooks-and-events/webhooks/webhook-events-and-payloads#issue_comment
+public record IssueCommentEvent(String action, GHIssue issue, GHIssueComment comment,
+                                GHRepository repository, @Nullable GHOrganization organization,
+                                @Nullable GHAppInstallation installation, GHUser sender) {
+}
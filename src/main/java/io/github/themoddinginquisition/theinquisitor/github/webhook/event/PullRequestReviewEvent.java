@@ -0,0 +1,15 @@
+package io.github.themoddinginquisition.theinquisitor.github.webhook.event;
+
+import org.jetbrains.annotations.Nullable;
+import org.kohsuke.github.GHAppInstallation;
+import org.kohsuke.github.GHOrganization;
+import org.kohsuke.github.GHPullRequest;
+import org.kohsuke.github.GHPullRequestReview;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GHUser;
+
+// https://docs.github.com/en/developers/webhooks-and-events/webhooks/webhook-events-and-payloads#pull_request_review
+public record PullRequestReviewEvent(String action, GHPullRequestReview review, GHPullRequest pull_request,
+                                     GHRepository repository, @Nullable GHOrganization organization,
+                                     @Nullable GHAppInstallation installation, GHUser sender) {
+}
@@ -13,6 +13,10 @@ public final class WebhookEventType<T> {
 
     public static final WebhookEventType<PingEvent> PING = new WebhookEventType<>("ping", PingEvent.class);
     public static final WebhookEventType<PushEvent> PUSH = new WebhookEventType<>("push", PushEvent.class);
+    public static final WebhookEventType<PullRequestEvent> PULL_REQUEST = new WebhookEventType<>("pull_request", PullRequestEvent.class);
+    public static final WebhookEventType<PullRequestReviewEvent> PULL_REQUEST_REVIEW = new WebhookEventType<>("pull_request_review", PullRequestReviewEvent.class);
+    public static final WebhookEventType<IssueCommentEvent> ISSUE_COMMENT = new WebhookEventType<>("issue_comment", IssueCommentEvent.class);
+    public static final WebhookEventType<LabelEvent> LABEL = new WebhookEventType<>("label", LabelEvent.class);
 
     private final String name;
     private final Class<T> clazz;
@@ -28,6 +32,10 @@ public final class WebhookEventType<T> {
         return name;
     }
 
+    public String getName() {
+        return name;
+    }
+
     public Class<T> getEventClass() {
         return clazz;
     }
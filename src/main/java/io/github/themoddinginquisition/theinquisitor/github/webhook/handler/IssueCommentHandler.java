@@ -0,0 +1,32 @@
+package io.github.themoddinginquisition.theinquisitor.github.webhook.handler;
+
+import io.github.themoddinginquisition.theinquisitor.commands.pr.ManagedPRs;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.RoutingKeys;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.event.IssueCommentEvent;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.event.WebhookEventType;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.UUID;
+
+public class IssueCommentHandler implements WebhookEventHandler<IssueCommentEvent> {
+
+    private final ManagedPRs managedPRs;
+
+    public IssueCommentHandler(ManagedPRs managedPRs) {
+        this.managedPRs = managedPRs;
+    }
+
+    @Override
+    public boolean accepts(RoutingKeys keys) {
+        return keys.repository() != null && managedPRs.isManaged(keys.repository(), keys.number());
+    }
+
+    @Override
+    public void handleEvent(UUID deliveryID, Context context, IssueCommentEvent event) throws IOException {
+        if (event.issue().isPullRequest() && managedPRs.refresh(event.repository().getFullName(), event.issue().getNumber(), WebhookEventType.ISSUE_COMMENT)) {
+            context.respond(HttpURLConnection.HTTP_ACCEPTED, "Updating linked thread.\n");
+            context.setHandled(true);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package io.github.themoddinginquisition.theinquisitor.github.webhook.handler;
+
+import io.github.themoddinginquisition.theinquisitor.commands.pr.ManagedPRs;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.event.LabelEvent;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.UUID;
+
+public class LabelHandler implements WebhookEventHandler<LabelEvent> {
+
+    private final ManagedPRs managedPRs;
+
+    public LabelHandler(ManagedPRs managedPRs) {
+        this.managedPRs = managedPRs;
+    }
+
+    @Override
+    public void handleEvent(UUID deliveryID, Context context, LabelEvent event) throws IOException {
+        managedPRs.onLabelsChanged(event.repository().getFullName());
+        context.respond(HttpURLConnection.HTTP_ACCEPTED, "Label cache invalidated.\n");
+        context.setHandled(true);
+    }
+}
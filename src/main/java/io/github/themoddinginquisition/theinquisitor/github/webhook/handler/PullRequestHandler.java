@@ -0,0 +1,32 @@
+package io.github.themoddinginquisition.theinquisitor.github.webhook.handler;
+
+import io.github.themoddinginquisition.theinquisitor.commands.pr.ManagedPRs;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.RoutingKeys;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.event.PullRequestEvent;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.event.WebhookEventType;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.UUID;
+
+public class PullRequestHandler implements WebhookEventHandler<PullRequestEvent> {
+
+    private final ManagedPRs managedPRs;
+
+    public PullRequestHandler(ManagedPRs managedPRs) {
+        this.managedPRs = managedPRs;
+    }
+
+    @Override
+    public boolean accepts(RoutingKeys keys) {
+        return keys.repository() != null && managedPRs.isManaged(keys.repository(), keys.number());
+    }
+
+    @Override
+    public void handleEvent(UUID deliveryID, Context context, PullRequestEvent event) throws IOException {
+        if (managedPRs.refresh(event.repository().getFullName(), event.number(), WebhookEventType.PULL_REQUEST)) {
+            context.respond(HttpURLConnection.HTTP_ACCEPTED, "Updating linked thread.\n");
+            context.setHandled(true);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.themoddinginquisition.theinquisitor.github.webhook.handler;
+
+import io.github.themoddinginquisition.theinquisitor.commands.pr.ManagedPRs;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.RoutingKeys;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.event.PullRequestReviewEvent;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.UUID;
+
+public class PullRequestReviewHandler implements WebhookEventHandler<PullRequestReviewEvent> {
+
+    private final ManagedPRs managedPRs;
+
+    public PullRequestReviewHandler(ManagedPRs managedPRs) {
+        this.managedPRs = managedPRs;
+    }
+
+    @Override
+    public boolean accepts(RoutingKeys keys) {
+        return "submitted".equals(keys.action()) && keys.repository() != null && managedPRs.isManaged(keys.repository(), keys.number());
+    }
+
+    @Override
+    public void handleEvent(UUID deliveryID, Context context, PullRequestReviewEvent event) throws IOException {
+        if (!event.action().equals("submitted"))
+            return;
+        if (managedPRs.onReviewSubmitted(event.repository().getFullName(), event.pull_request(), event.review(), event.sender())) {
+            context.respond(HttpURLConnection.HTTP_ACCEPTED, "Review sent to linked thread.\n");
+            context.setHandled(true);
+        }
+    }
+}
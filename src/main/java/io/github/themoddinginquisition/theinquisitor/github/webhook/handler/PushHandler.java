@@ -2,24 +2,38 @@ package io.github.themoddinginquisition.theinquisitor.github.webhook.handler;
 
 import io.github.themoddinginquisition.theinquisitor.TheInquisitor;
 import io.github.themoddinginquisition.theinquisitor.commands.pr.ManagedPRs;
+import io.github.themoddinginquisition.theinquisitor.github.webhook.RoutingKeys;
 import io.github.themoddinginquisition.theinquisitor.github.webhook.event.PushEvent;
 import net.dv8tion.jda.api.EmbedBuilder;
 
 import java.io.IOException;
 import java.time.Instant;
-import java.util.Locale;
 import java.util.UUID;
 
 public class PushHandler implements WebhookEventHandler<PushEvent> {
 
     public static final int COMMIT_COLOR = 0x7288da;
+    public static final String BRANCH_PREFIX = "refs/heads/";
+
+    private final ManagedPRs managedPRs;
+
+    public PushHandler(ManagedPRs managedPRs) {
+        this.managedPRs = managedPRs;
+    }
+
+    @Override
+    public boolean accepts(RoutingKeys keys) {
+        if (keys.ref() == null || keys.repository() == null || !keys.ref().startsWith(BRANCH_PREFIX))
+            return false;
+        final var branch = keys.ref().substring(BRANCH_PREFIX.length());
+        return managedPRs.getThreadByBranch(keys.repository(), branch) != null;
+    }
 
     @Override
     public void handleEvent(UUID deliveryID, Context context, PushEvent event) throws IOException {
-        final var branch = event.ref().substring("refs/heads/".length());
-        final var fullRef = (event.repository().getFullName() + "/" + branch).toLowerCase(Locale.ROOT);
-        if (ManagedPRs.BRANCH_TO_THREAD.containsKey(fullRef)) {
-            final var threadId = ManagedPRs.BRANCH_TO_THREAD.get(fullRef);
+        final var branch = event.ref().substring(BRANCH_PREFIX.length());
+        final var threadId = managedPRs.getThreadByBranch(event.repository().getFullName(), branch);
+        if (threadId != null) {
             final var thread = TheInquisitor.getInstance().getJDA().getThreadChannelById(threadId);
             if (thread == null) {
                 context.setHandled(false);
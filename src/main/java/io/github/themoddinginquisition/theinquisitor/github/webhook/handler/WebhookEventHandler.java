@@ -1,5 +1,7 @@
 package io.github.themoddinginquisition.theinquisitor.github.webhook.handler;
 
+import io.github.themoddinginquisition.theinquisitor.github.webhook.RoutingKeys;
+
 import java.io.IOException;
 import java.util.UUID;
 
@@ -10,6 +12,17 @@ import java.util.UUID;
  */
 public interface WebhookEventHandler<T> {
 
+    /**
+     * Checks if this handler is interested in an event, before its payload is deserialized. <br>
+     * If no handler accepts an event, its payload will not be deserialized at all.
+     *
+     * @param keys the routing keys of the event
+     * @return if this handler wants to handle the event
+     */
+    default boolean accepts(RoutingKeys keys) {
+        return true;
+    }
+
     /**
      * Handles the event
      *
@@ -1,14 +1,33 @@
 package io.github.themoddinginquisition.theinquisitor.util;
 
+import io.github.themoddinginquisition.theinquisitor.github.webhook.WebhookHttpHandler;
+
 public class Config {
 
     public long guildId = 0L;
+    public boolean virtualThreads = false;
     public boolean forceCommandsGuildOnly = false;
     public String organization = "TheModdingInquisition";
     public String janitorsTeam = "ModdedJanitors";
+    public long teamRefreshInterval = 5;
     public String archivesRepo = "TheModdingInquisition/archives";
 
+    public int databaseReaders = 4;
+    public long slowQueryThreshold = 100;
+
     public long channel = 0L;
     public long updateCheckInterval = 10;
+    public int prCheckConcurrency = 4;
+    public boolean batchPRFetching = true;
+    public long webhookReconciliationInterval = 60;
+    public int rateLimitReserve = 500;
+    public String gitHubCacheDirectory = "cache/github";
+    public long gitHubCacheSize = 50;
     public int webhookPort = 1963;
+    public boolean webhookAsync = false;
+    public int webhookWorkers = 2;
+    public int webhookQueueCapacity = 100;
+    public WebhookHttpHandler.Backpressure webhookBackpressure = WebhookHttpHandler.Backpressure.REJECT;
+    public long webhookDeduplicationHours = 24;
+    public boolean persistWebhookDeliveries = true;
 }
@@ -0,0 +1,36 @@
+package io.github.themoddinginquisition.theinquisitor.util;
+
+import io.github.themoddinginquisition.theinquisitor.TheInquisitor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs how long each phase of a multi-phase process, like startup, took.
+ */
+public final class PhaseTimer {
+    private final String process;
+    private final long start = System.nanoTime();
+    private long lastPhase = start;
+
+    public PhaseTimer(String process) {
+        this.process = process;
+    }
+
+    /**
+     * Marks the end of a phase, logging how long it took since the end of the previous one.
+     *
+     * @param phase the name of the phase
+     */
+    public void phase(String phase) {
+        final var now = System.nanoTime();
+        TheInquisitor.LOGGER.info("{}: {} took {} ms", process, phase, TimeUnit.NANOSECONDS.toMillis(now - lastPhase));
+        lastPhase = now;
+    }
+
+    /**
+     * Logs how long the whole process took.
+     */
+    public void done() {
+        TheInquisitor.LOGGER.info("{}: done in {} ms", process, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
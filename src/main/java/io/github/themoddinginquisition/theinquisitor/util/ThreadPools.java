@@ -0,0 +1,71 @@
+package io.github.themoddinginquisition.theinquisitor.util;
+
+import io.github.themoddinginquisition.theinquisitor.TheInquisitor;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+public class ThreadPools {
+
+    /**
+     * Creates a thread factory creating daemon threads with the given name.
+     *
+     * @param name the name of the threads
+     * @return the thread factory
+     */
+    public static ThreadFactory daemon(String name) {
+        return r -> {
+            final var thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates an executor meant for tasks which block on I/O. <br>
+     * If the runtime supports virtual threads, each task will run on its own virtual thread. Otherwise,
+     * the tasks will run on an unbounded pool of daemon threads, so that blocked tasks never delay other ones.
+     *
+     * @param name the name of the threads
+     * @return the executor
+     */
+    public static ExecutorService blocking(String name) {
+        final var virtual = newVirtualThreadExecutor(name);
+        return virtual == null ? Executors.newCachedThreadPool(daemon(name)) : virtual;
+    }
+
+    /**
+     * @return if the runtime supports virtual threads
+     */
+    public static boolean supportsVirtualThreads() {
+        return VIRTUAL_THREADS_SUPPORTED;
+    }
+
+    private static final boolean VIRTUAL_THREADS_SUPPORTED;
+
+    static {
+        final var executor = newVirtualThreadExecutor("VirtualThreadProbe");
+        VIRTUAL_THREADS_SUPPORTED = executor != null;
+        if (executor != null)
+            executor.shutdown();
+    }
+
+    // The project targets Java 17, so virtual threads (Java 21+) can only be accessed reflectively
+    @Nullable
+    private static ExecutorService newVirtualThreadExecutor(String name) {
+        try {
+            final var builderClass = Class.forName("java.lang.Thread$Builder");
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            final var factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        } catch (RuntimeException e) {
+            TheInquisitor.LOGGER.debug("Could not create virtual thread executor: ", e);
+            return null;
+        }
+    }
+}
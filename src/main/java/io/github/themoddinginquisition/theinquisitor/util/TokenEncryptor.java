@@ -0,0 +1,104 @@
+package io.github.themoddinginquisition.theinquisitor.util;
+
+import org.jasypt.util.text.AES256TextEncryptor;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Encrypts the GitHub tokens of linked accounts using AES-GCM. <br>
+ * The key is derived from the password only once, when the encryptor is created, unlike jasypt's encryptors which derive
+ * it on every call. The ID of the user a token belongs to is authenticated alongside it, so tokens can't be swapped between users. <br>
+ * Tokens encrypted using the old jasypt scheme, which aren't {@linkplain #PREFIX prefixed}, can still be decrypted
+ * until they are {@linkplain #isLegacy(String) migrated}.
+ */
+public final class TokenEncryptor {
+    public static final String PREFIX = "gcm:";
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+    private static final int KEY_ITERATIONS = 310_000;
+    // The password is a secret of the deployment rather than a user password, so a fixed salt is enough
+    private static final byte[] SALT = "TheInquisitor/github_oauth".getBytes(StandardCharsets.UTF_8);
+
+    private final SecretKey key;
+    private final AES256TextEncryptor legacy = new AES256TextEncryptor();
+    private final SecureRandom random = new SecureRandom();
+
+    public TokenEncryptor(String password) {
+        try {
+            final var spec = new PBEKeySpec(password.toCharArray(), SALT, KEY_ITERATIONS, 256);
+            final var derived = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            spec.clearPassword();
+            this.key = new SecretKeySpec(derived, "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not derive token encryption key", e);
+        }
+        legacy.setPassword(password);
+    }
+
+    /**
+     * Encrypts a token.
+     *
+     * @param userId the ID of the user the token belongs to
+     * @param token  the token
+     * @return the encrypted token
+     */
+    public String encrypt(long userId, String token) {
+        try {
+            final var iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            final var cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+            cipher.updateAAD(aad(userId));
+            final var encrypted = cipher.doFinal(token.getBytes(StandardCharsets.UTF_8));
+            final var out = ByteBuffer.allocate(IV_LENGTH + encrypted.length).put(iv).put(encrypted).array();
+            return PREFIX + Base64.getEncoder().encodeToString(out);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not encrypt token", e);
+        }
+    }
+
+    /**
+     * Decrypts a token, which may be encrypted using either the current or the legacy scheme.
+     *
+     * @param userId    the ID of the user the token belongs to
+     * @param encrypted the encrypted token
+     * @return the token
+     */
+    public String decrypt(long userId, String encrypted) {
+        if (isLegacy(encrypted))
+            return legacy.decrypt(encrypted);
+        try {
+            final var in = Base64.getDecoder().decode(encrypted.substring(PREFIX.length()));
+            final var cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, in, 0, IV_LENGTH));
+            cipher.updateAAD(aad(userId));
+            return new String(cipher.doFinal(in, IV_LENGTH, in.length - IV_LENGTH), StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not decrypt token of user " + userId, e);
+        }
+    }
+
+    /**
+     * @param encrypted an encrypted token
+     * @return if the token was encrypted using the legacy jasypt scheme
+     */
+    public static boolean isLegacy(String encrypted) {
+        return !encrypted.startsWith(PREFIX);
+    }
+
+    private static byte[] aad(long userId) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(userId).array();
+    }
+}
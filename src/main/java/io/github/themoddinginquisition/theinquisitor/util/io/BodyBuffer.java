@@ -0,0 +1,98 @@
+package io.github.themoddinginquisition.theinquisitor.util.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A growable byte buffer used for reading request bodies, which is pooled in order to be reused between requests. <br>
+ * Buffers are acquired using {@link #acquire()}, and are returned to the pool when {@linkplain #close() closed}.
+ */
+public final class BodyBuffer implements AutoCloseable {
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    private static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 8;
+
+    private static final Queue<BodyBuffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+    public static BodyBuffer acquire() {
+        final var buffer = POOL.poll();
+        if (buffer == null)
+            return new BodyBuffer();
+        POOL_SIZE.decrementAndGet();
+        return buffer;
+    }
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    private BodyBuffer() {
+    }
+
+    /**
+     * Reads the given stream fully into this buffer, replacing its old contents.
+     *
+     * @param in      the stream to read
+     * @param maxSize the maximum amount of bytes to read
+     * @return the amount of bytes read
+     * @throws TooLargeException if the stream has more than {@code maxSize} bytes
+     * @throws IOException       if an exception occurs reading the stream
+     */
+    public int readFrom(InputStream in, int maxSize) throws IOException {
+        size = 0;
+        int read;
+        while ((read = in.read(bytes, size, bytes.length - size)) != -1) {
+            size += read;
+            if (size > maxSize)
+                throw new TooLargeException(maxSize);
+            if (size == bytes.length)
+                // Only leave room for one byte past the maximum, which is enough to detect larger streams
+                bytes = Arrays.copyOf(bytes, Math.min(bytes.length * 2, maxSize + 1));
+        }
+        return size;
+    }
+
+    /**
+     * @return the backing array of this buffer. Only the first {@link #size()} bytes are valid
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of the contents of this buffer, which can outlive it
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    @Override
+    public void close() {
+        // Don't keep the memory of unusually large bodies around
+        if (bytes.length > MAX_POOLED_CAPACITY)
+            return;
+        if (POOL_SIZE.incrementAndGet() > MAX_POOLED_BUFFERS) {
+            POOL_SIZE.decrementAndGet();
+            return;
+        }
+        size = 0;
+        POOL.offer(this);
+    }
+
+    /**
+     * Thrown when a stream is larger than the maximum size allowed to be read.
+     */
+    public static final class TooLargeException extends IOException {
+        public TooLargeException(int maxSize) {
+            super("Stream is larger than the maximum of " + maxSize + " bytes");
+        }
+    }
+}
@@ -1,15 +1,23 @@
 package org.kohsuke.github;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.commons.io.IOUtils;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 public class GHAccessor {
 
     public static final FieldAccessor<GHPullRequest, Boolean> PR_IS_MERGED = getField(GHPullRequest.class, "merged");
     public static final FieldAccessor<GHPullRequest, Integer> PR_COMMITS = getField(GHPullRequest.class, "commits");
 
+    private static final int LABELS_PAGE_SIZE = 100;
+
     public static void subscribe(GitHub gitHub, long threadId) throws IOException {
         final var req = gitHub.createRequest()
                 .method("PUT")
@@ -18,6 +26,162 @@ public class GHAccessor {
         System.out.println(req.client.sendRequest(req, input -> IOUtils.toString(input.bodyStream())).body());;
     }
 
+    /**
+     * Executes a GraphQL query.
+     *
+     * @param gitHub the client to use for the request
+     * @param query  the query to execute
+     * @return the raw JSON response
+     */
+    public static String graphQL(GitHub gitHub, String query) throws IOException {
+        final var req = gitHub.createRequest()
+                .method("POST")
+                .with("query", query)
+                .withUrlPath("/graphql");
+        return req.client.sendRequest(req, input -> IOUtils.toString(input.bodyStream(), StandardCharsets.UTF_8)).body();
+    }
+
+    /**
+     * Fetches a pull request, sending the given validators as conditional request headers.
+     *
+     * @param gitHub       the client to use for the request
+     * @param repository   the repository of the pull request
+     * @param number       the number of the pull request
+     * @param etag         the {@code ETag} of the last response, if any
+     * @param lastModified the {@code Last-Modified} value of the last response, if any
+     * @return the response. If GitHub replied with {@code 304 Not Modified}, the body will be {@code null}
+     */
+    public static ConditionalResponse<GHPullRequest> getPullRequestConditionally(GitHub gitHub, GHRepository repository, int number,
+                                                                                 @Nullable String etag, @Nullable String lastModified) throws IOException {
+        final var req = gitHub.createRequest()
+                .withUrlPath("/repos/" + repository.getOwnerName() + "/" + repository.getName() + "/pulls/" + number);
+        if (etag != null)
+            req.setHeader("If-None-Match", etag);
+        if (lastModified != null)
+            req.setHeader("If-Modified-Since", lastModified);
+        try {
+            final var response = req.client.sendRequest(req, input -> GitHubResponse.parseBody(input, GHPullRequest.class));
+            if (response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED || response.body() == null)
+                return new ConditionalResponse<>(null, etag, lastModified);
+            return new ConditionalResponse<>(response.body().wrapUp(repository), response.headerField("ETag"), response.headerField("Last-Modified"));
+        } catch (HttpException e) {
+            if (e.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)
+                return new ConditionalResponse<>(null, etag, lastModified);
+            throw e;
+        }
+    }
+
+    /**
+     * Lists the labels of a repository, sending the given {@code ETag} as a conditional request header. <br>
+     * Only the first page can be validated, so no {@code ETag} is returned for repositories with more than one page of labels.
+     *
+     * @param gitHub     the client to use for the request
+     * @param repository the full name of the repository
+     * @param etag       the {@code ETag} of the last response, if any
+     * @return the response. If GitHub replied with {@code 304 Not Modified}, the body will be {@code null}
+     */
+    public static ConditionalResponse<List<GHLabel>> listLabelsConditionally(GitHub gitHub, String repository, @Nullable String etag) throws IOException {
+        final var path = "/repos/" + repository + "/labels";
+        final var req = gitHub.createRequest()
+                .withUrlPath(path)
+                .with("per_page", LABELS_PAGE_SIZE);
+        if (etag != null)
+            req.setHeader("If-None-Match", etag);
+        try {
+            final var response = req.client.sendRequest(req, input -> GitHubResponse.parseBody(input, GHLabel[].class));
+            if (response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED || response.body() == null)
+                return new ConditionalResponse<>(null, etag, null);
+            final var labels = new ArrayList<>(List.of(response.body()));
+            if (labels.size() < LABELS_PAGE_SIZE)
+                return new ConditionalResponse<>(labels, response.headerField("ETag"), null);
+            for (int page = 2; labels.size() == (page - 1) * LABELS_PAGE_SIZE; page++) {
+                labels.addAll(List.of(gitHub.createRequest()
+                        .withUrlPath(path)
+                        .with("per_page", LABELS_PAGE_SIZE)
+                        .with("page", page)
+                        .fetch(GHLabel[].class)));
+            }
+            return new ConditionalResponse<>(labels, null, null);
+        } catch (HttpException e) {
+            if (e.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)
+                return new ConditionalResponse<>(null, etag, null);
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches a single label of a repository by its name.
+     *
+     * @param gitHub     the client to use for the request
+     * @param repository the full name of the repository
+     * @param name       the name of the label
+     * @return the label
+     */
+    public static GHLabel getLabel(GitHub gitHub, String repository, String name) throws IOException {
+        // The name is encoded by the requester, so it must be passed as its own path item
+        return gitHub.createRequest()
+                .withUrlPath("/repos/" + repository + "/labels", name)
+                .fetch(GHLabel.class);
+    }
+
+    /**
+     * Lists the comments of a pull request which were updated after the given time.
+     *
+     * @param gitHub the client to use for the request
+     * @param pr     the pull request
+     * @param since  only comments updated at or after this time are returned. If {@code null}, all comments are returned
+     * @return the comments, in ascending order of their IDs
+     */
+    public static List<GHIssueComment> listCommentsSince(GitHub gitHub, GHPullRequest pr, @Nullable Instant since) throws IOException {
+        final var req = gitHub.createRequest()
+                .withUrlPath(getRepositoryPath(pr.getRepository()) + "/issues/" + pr.getNumber() + "/comments");
+        if (since != null)
+            req.with("since", since.toString());
+        return req.toIterable(GHIssueComment[].class, item -> item.wrapUp(pr))
+                .withPageSize(100)
+                .toList();
+    }
+
+    /**
+     * Fetches a page of the commits of a pull request. The commits are listed from the oldest to the newest. <br>
+     * Unlike {@link GHPullRequest#listCommits()}, this keeps the GitHub account of the author of each commit, which
+     * means that it doesn't need to be looked up separately.
+     *
+     * @param gitHub   the client to use for the request
+     * @param pr       the pull request
+     * @param page     the page to fetch, starting from 1
+     * @param pageSize the size of the page, at most 100
+     * @return the commits in the page
+     */
+    public static List<PRCommit> getCommitsPage(GitHub gitHub, GHPullRequest pr, int page, int pageSize) throws IOException {
+        final var req = gitHub.createRequest()
+                .withUrlPath(getRepositoryPath(pr.getRepository()) + "/pulls/" + pr.getNumber() + "/commits")
+                .with("per_page", pageSize)
+                .with("page", page);
+        final var json = req.client.sendRequest(req, input -> IOUtils.toString(input.bodyStream(), StandardCharsets.UTF_8)).body();
+        final var reader = GitHub.getMappingObjectReader();
+        final var commits = new ArrayList<PRCommit>();
+        for (final var node : reader.readTree(json)) {
+            final var detail = reader.treeToValue(node, GHPullRequestCommitDetail.class);
+            detail.wrapUp(pr);
+            final var author = node.get("author");
+            commits.add(new PRCommit(detail, getText(author, "login"), getText(author, "avatar_url"), getText(author, "html_url")));
+        }
+        return commits;
+    }
+
+    @Nullable
+    private static String getText(@Nullable JsonNode node, String field) {
+        if (node == null || !node.isObject())
+            return null;
+        final var value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static String getRepositoryPath(GHRepository repository) {
+        return "/repos/" + repository.getOwnerName() + "/" + repository.getName();
+    }
+
     public static boolean isPRDraft(GHPullRequest pr) {
         return pr.draft;
     }
@@ -43,6 +207,30 @@ public class GHAccessor {
         }
     }
 
+    /**
+     * The result of a conditional request.
+     *
+     * @param body         the response body, or {@code null} if the resource was not modified
+     * @param etag         the {@code ETag} validator to send with the next request
+     * @param lastModified the {@code Last-Modified} validator to send with the next request
+     */
+    public record ConditionalResponse<T>(@Nullable T body, @Nullable String etag, @Nullable String lastModified) {
+        public boolean notModified() {
+            return body == null;
+        }
+    }
+
+    /**
+     * A commit of a pull request.
+     *
+     * @param detail          the commit
+     * @param authorLogin     the login of the GitHub account of the author, or {@code null} if the author doesn't have one
+     * @param authorAvatarUrl the avatar of the GitHub account of the author
+     * @param authorHtmlUrl   the profile URL of the GitHub account of the author
+     */
+    public record PRCommit(GHPullRequestCommitDetail detail, @Nullable String authorLogin,
+                           @Nullable String authorAvatarUrl, @Nullable String authorHtmlUrl) {}
+
     public interface FieldAccessor<T, R> {
         @Nullable
         R get(@Nullable T object);
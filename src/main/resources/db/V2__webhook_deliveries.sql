@@ -0,0 +1,9 @@
+create table webhook_deliveries
+(
+    id_msb   big int not null,
+    id_lsb   big int not null,
+    received big int not null,
+    constraint pk_webhook_deliveries primary key (id_msb, id_lsb)
+);
+
+create index idx_webhook_deliveries_received on webhook_deliveries (received);
@@ -0,0 +1,6 @@
+create table pr_branches
+(
+    thread unsigned big int not null primary key,
+    repo   text not null,
+    branch text not null
+);
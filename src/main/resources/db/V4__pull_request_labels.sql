@@ -0,0 +1,16 @@
+create table pull_request_labels
+(
+    repo   text not null,
+    number unsigned big int not null,
+    label  big int not null,
+    constraint pk_pull_request_labels primary key (repo, number, label)
+);
+
+create index idx_pull_request_labels_label on pull_request_labels (label);
+
+insert or ignore into pull_request_labels
+select p.repo, p.number, l.value
+from pull_requests p, json_each(p.labels) l
+where p.labels is not null and json_valid(p.labels);
+
+alter table pull_requests drop column labels;
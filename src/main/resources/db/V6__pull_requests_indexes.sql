@@ -0,0 +1,43 @@
+-- SQLite can't change the collation of a column in place, so the tables are rebuilt with a case-insensitive repo key
+
+create table pull_requests_new
+(
+    repo             text collate nocase not null,
+    number           unsigned big int not null,
+    thread           unsigned big int not null,
+    comments         int,
+    state            text,
+    commits          int,
+    title_hash       big int not null default 0,
+    description_hash big int not null default 0,
+    constraint pk_prs primary key (repo, number)
+);
+insert or replace into pull_requests_new(repo, number, thread, comments, state, commits, title_hash, description_hash)
+select repo, number, thread, comments, state, commits, title_hash, description_hash from pull_requests;
+drop table pull_requests;
+alter table pull_requests_new rename to pull_requests;
+create index idx_pull_requests_thread on pull_requests (thread);
+
+create table pull_request_labels_new
+(
+    repo   text collate nocase not null,
+    number unsigned big int not null,
+    label  big int not null,
+    constraint pk_pull_request_labels primary key (repo, number, label)
+);
+insert or ignore into pull_request_labels_new select repo, number, label from pull_request_labels;
+drop table pull_request_labels;
+alter table pull_request_labels_new rename to pull_request_labels;
+create index idx_pull_request_labels_label on pull_request_labels (label);
+
+create table pull_request_texts_new
+(
+    repo        text collate nocase not null,
+    number      unsigned big int not null,
+    title       text,
+    description text,
+    constraint pk_pull_request_texts primary key (repo, number)
+);
+insert or replace into pull_request_texts_new select repo, number, title, description from pull_request_texts;
+drop table pull_request_texts;
+alter table pull_request_texts_new rename to pull_request_texts;
@@ -0,0 +1,9 @@
+create table pr_cursors
+(
+    repo            text collate nocase not null,
+    number          unsigned big int not null,
+    last_comment_id big int,
+    last_comment_at big int,
+    last_commit_sha text,
+    constraint pk_pr_cursors primary key (repo, number)
+);